@@ -1,3 +1,4 @@
+import java.util.Arrays;
 import java.util.NoSuchElementException;
 
 /**
@@ -78,6 +79,7 @@ class ArrayList<E> implements List<E> {
 
     /**
      * Add new element at index i.
+     * Elements after it are shifted by a single block copy.
      *
      * @param i index of the element
      *          from 0 to size
@@ -90,29 +92,47 @@ class ArrayList<E> implements List<E> {
             throw new IndexOutOfBoundsException();
         }
 
-        if (this.size + 1 > this.capacity) {
-            Object[] new_data = new Object[this.capacity * 2];
+        ensureCapacity(this.size + 1);
+        System.arraycopy(this.data, i, this.data, i + 1, this.size - i);
+        this.data[i] = e;
 
-            for (int j = 0; j < i; j++) {
-                new_data[j] = this.data[j];
-            }
-            new_data[i] = e;
-            for (int j = i + 1; j < this.data.length; j++) {
-                new_data[j] = this.data[j - 1];
-            }
+        this.size++;
+    }
 
-            this.capacity *= 2;
-            this.size++;
-            this.data = new_data;
+    /**
+     * Add all elements of the collection starting at index i,
+     * keeping their order.
+     * Elements after i are shifted once by the size of the collection,
+     * so inserting k elements costs O(size + k), not O(size * k).
+     *
+     * @param i index of the first added element
+     *          from 0 to size
+     * @param c elements to be added
+     * @throws IndexOutOfBoundsException
+     * if index is not in the list
+     */
+    public void addAll(int i, Collection<? extends E> c) throws IndexOutOfBoundsException {
+        if (i < 0 || i > this.size) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        int count = c.size();
+        if (count == 0) {
             return;
         }
 
-        for (int j = i + 1; j < this.data.length; j++) {
-            this.data[j] = this.data[j - 1];
+        // copy first: the collection may be this list
+        Object[] added = new Object[count];
+        Iterator<? extends E> iterator = c.iterator();
+        for (int j = 0; j < count; j++) {
+            added[j] = iterator.next();
         }
-        this.data[i] = e;
 
-        this.size++;
+        ensureCapacity(this.size + count);
+        System.arraycopy(this.data, i, this.data, i + count, this.size - i);
+        System.arraycopy(added, 0, this.data, i, count);
+
+        this.size += count;
     }
 
     /**
@@ -132,9 +152,7 @@ class ArrayList<E> implements List<E> {
 
         E removed = (E) data[i];
 
-        for (int j = i; j < this.data.length; j++) {
-            this.data[j] = this.data[j + 1];
-        }
+        System.arraycopy(this.data, i + 1, this.data, i, this.size - i - 1);
         this.data[this.size - 1] = null;
 
         this.size--;
@@ -142,6 +160,54 @@ class ArrayList<E> implements List<E> {
         return removed;
     }
 
+    /**
+     * Remove elements with indexes from from (inclusive) to to (exclusive).
+     * Elements after them are shifted by a single block copy.
+     *
+     * @param from index of the first removed element
+     * @param to index after the last removed element
+     * @throws IndexOutOfBoundsException
+     * if the range is not in the list
+     */
+    public void removeRange(int from, int to) throws IndexOutOfBoundsException {
+        if (from < 0 || to > this.size || from > to) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        System.arraycopy(this.data, to, this.data, from, this.size - to);
+        int newSize = this.size - (to - from);
+        Arrays.fill(this.data, newSize, this.size, null);
+
+        this.size = newSize;
+    }
+
+    /**
+     * Make sure the list can hold minCapacity elements without growing.
+     * Capacity at least doubles, so adding elements one by one
+     * takes amortized constant time.
+     *
+     * @param minCapacity number of elements to be held
+     */
+    public void ensureCapacity(int minCapacity) {
+        if (minCapacity <= this.capacity) {
+            return;
+        }
+
+        int newCapacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(minCapacity, this.capacity * 2L));
+        this.data = Arrays.copyOf(this.data, newCapacity);
+        this.capacity = newCapacity;
+    }
+
+    /**
+     * Reduce capacity of the list to its size.
+     */
+    public void trimToSize() {
+        if (this.capacity > this.size) {
+            this.data = Arrays.copyOf(this.data, this.size);
+            this.capacity = this.size;
+        }
+    }
+
     /**
      * Change the size of the ArrayList removing elements with
      * indexes less than newSize.
@@ -150,21 +216,16 @@ class ArrayList<E> implements List<E> {
      */
     public void resize(int newSize) {
         if (this.size < newSize) {
-            Object[] newData = new Object[newSize];
-
-            for (int i = 0; i < this.size; i++) {
-                newData[i] = this.data[i];
+            if (newSize > this.capacity) {
+                this.data = Arrays.copyOf(this.data, newSize);
+                this.capacity = newSize;
             }
 
-            this.capacity = newSize;
             this.size = newSize;
-            this.data = newData;
             return;
         }
 
-        for (int i = newSize - 1; i < this.size; i++) {
-            this.data[i] = null;
-        }
+        Arrays.fill(this.data, newSize, this.size, null);
 
         this.size = newSize;
     }
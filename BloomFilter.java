@@ -0,0 +1,212 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Blocked Bloom filter: approximate set which may answer that an
+ * element is present when it is not, but never the other way round.
+ * Bits are grouped into blocks of 512 bits (a cache line), and all
+ * bits of an element are set in a single block chosen by its hash,
+ * so a query touches one cache line.
+ * Hashes are taken from Hasher.
+ *
+ * @param <E> type of elements
+ */
+class BloomFilter<E> {
+    ////////// PRIVATE FIELDS //////////
+    private static final int MAGIC = 0x424C4F4D;
+    // bits in a block
+    private static final int BLOCK_BITS = 512;
+    private static final int BLOCK_LONGS = BLOCK_BITS / 64;
+
+    private final long[] bits;
+    private final int blockCount;
+    // bits set per element
+    private final int hashCount;
+
+    ////////// PUBLIC METHODS //////////
+
+    /**
+     * Constructs empty BloomFilter for expected number of elements.
+     * Size and number of hashes are chosen for the given rate of
+     * false positives.
+     *
+     * @param expectedSize expected number of elements
+     * @param falsePositiveRate wanted share of false positives
+     * @throws IllegalArgumentException if expectedSize is negative or
+     * falsePositiveRate is not in (0, 1)
+     */
+    BloomFilter(int expectedSize, double falsePositiveRate) throws IllegalArgumentException {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size must not be negative.");
+        }
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("False positive rate must be in (0, 1).");
+        }
+
+        double n = Math.max(1, expectedSize);
+        // blocking makes bits of a block fill unevenly, which costs
+        // about 5% more bits per decimal digit of the rate
+        double bitCount = -n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))
+                * (1 - 0.05 * Math.log10(falsePositiveRate));
+        blockCount = (int) Math.max(1, Math.min(Integer.MAX_VALUE / BLOCK_LONGS,
+                Math.ceil(bitCount / BLOCK_BITS)));
+        hashCount = (int) Math.max(1, Math.min(16, Math.round(bitCount / n * Math.log(2))));
+        bits = new long[blockCount * BLOCK_LONGS];
+    }
+
+    /**
+     * Constructs BloomFilter with given contents.
+     *
+     * @param bits bits of all blocks
+     * @param hashCount bits set per element
+     */
+    private BloomFilter(long[] bits, int hashCount) {
+        this.bits = bits;
+        this.blockCount = bits.length / BLOCK_LONGS;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * Adds the element.
+     *
+     * @param e element to be added
+     */
+    public void add(E e) {
+        int hash = Hasher.getHashCode(e);
+        int base = block(hash) * BLOCK_LONGS;
+        int bit = Hasher.xxHash(hash);
+        int step = step(hash);
+
+        for (int i = 0; i < hashCount; i++) {
+            int index = bit & (BLOCK_BITS - 1);
+            bits[base + (index >>> 6)] |= 1L << index;
+            bit += step;
+            step += i;
+        }
+    }
+
+    /**
+     * Checks whether the element may be in the filter.
+     *
+     * @param e element to be checked
+     * @return false if the element was surely not added, true if it probably was
+     */
+    public boolean mightContain(E e) {
+        int hash = Hasher.getHashCode(e);
+        int base = block(hash) * BLOCK_LONGS;
+        int bit = Hasher.xxHash(hash);
+        int step = step(hash);
+
+        for (int i = 0; i < hashCount; i++) {
+            int index = bit & (BLOCK_BITS - 1);
+            if ((bits[base + (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+            bit += step;
+            step += i;
+        }
+
+        return true;
+    }
+
+    /**
+     * Adds all elements of the other filter of the same size.
+     *
+     * @param other filter to be merged
+     * @throws IllegalArgumentException if filters have different size or number of hashes
+     */
+    public void merge(BloomFilter<E> other) throws IllegalArgumentException {
+        if (other.bits.length != bits.length || other.hashCount != hashCount) {
+            throw new IllegalArgumentException("Filters must have the same size and number of hashes.");
+        }
+
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] |= other.bits[i];
+        }
+    }
+
+    /**
+     * Returns number of bits of the filter.
+     *
+     * @return number of bits
+     */
+    public long getBitCount() {
+        return (long) bits.length * 64;
+    }
+
+    /**
+     * Returns number of bits set per element.
+     *
+     * @return number of hashes
+     */
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    /**
+     * Writes the filter to the stream.
+     *
+     * @param out stream to write to
+     * @throws IOException if writing fails
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(hashCount);
+        out.writeInt(bits.length);
+        for (long word : bits) {
+            out.writeLong(word);
+        }
+    }
+
+    /**
+     * Reads the filter written by writeTo.
+     *
+     * @param in stream to read from
+     * @param <E> type of elements
+     * @return read filter
+     * @throws IOException if reading fails or the stream holds no filter
+     */
+    static <E> BloomFilter<E> readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Stream does not hold a BloomFilter.");
+        }
+
+        int hashCount = in.readInt();
+        int length = in.readInt();
+        if (hashCount < 1 || length < BLOCK_LONGS || length % BLOCK_LONGS != 0) {
+            throw new IOException("BloomFilter header is corrupted.");
+        }
+
+        long[] bits = new long[length];
+        for (int i = 0; i < length; i++) {
+            bits[i] = in.readLong();
+        }
+
+        return new BloomFilter<>(bits, hashCount);
+    }
+
+    ////////// PRIVATE METHODS //////////
+
+    /**
+     * Chooses block of the element.
+     *
+     * @param hash hash code of the element
+     * @return index of the block
+     */
+    private int block(int hash) {
+        return (int) (((Hasher.murmur3(hash) & 0xFFFFFFFFL) * blockCount) >>> 32);
+    }
+
+    /**
+     * Returns initial step between bits of the element inside its block.
+     * The step grows after every bit (enhanced double hashing), which
+     * spreads bits better than a fixed step inside a small block.
+     *
+     * @param hash hash code of the element
+     * @return step
+     */
+    private static int step(int hash) {
+        return Hasher.murmur3(hash) | 1;
+    }
+}
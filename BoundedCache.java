@@ -0,0 +1,696 @@
+import java.util.NoSuchElementException;
+
+/**
+ * Cache of bounded total weight built on HashMap.
+ * HashMap finds the node of a key, nodes are also linked into
+ * access-ordered lists which decide what is evicted when the
+ * total weight exceeds the maximum.
+ * Two eviction policies are supported:
+ * LRU evicts the least recently used entry;
+ * TINY_LFU (W-TinyLFU) puts new entries into a small LRU window,
+ * and lets an entry leaving the window into the main space only if
+ * it was requested more often than the entry it would replace.
+ * Frequencies are estimated by a compact count-min sketch.
+ *
+ * @param <K> type of keys
+ * @param <V> type of values
+ */
+class BoundedCache<K, V> implements Map<K, V> {
+    /**
+     * Eviction policies of the cache.
+     */
+    enum Policy {
+        LRU,
+        TINY_LFU
+    }
+
+    /**
+     * Calculates weight of an entry.
+     *
+     * @param <K> type of keys
+     * @param <V> type of values
+     */
+    interface Weigher<K, V> {
+        /**
+         * Returns weight of the entry.
+         *
+         * @param k key
+         * @param v value
+         * @return non-negative weight
+         */
+        int weigh(K k, V v);
+    }
+
+    /**
+     * Receives entries evicted from the cache.
+     *
+     * @param <K> type of keys
+     * @param <V> type of values
+     */
+    interface EvictionListener<K, V> {
+        /**
+         * Called after the entry is evicted because of the weight limit.
+         *
+         * @param k key
+         * @param v value
+         */
+        void onEviction(K k, V v);
+    }
+
+    ////////// PRIVATE FIELDS //////////
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final HashMap<K, Node<K, V>> data;
+    private final Policy policy;
+    private final Weigher<K, V> weigher;
+    private final EvictionListener<K, V> listener;
+    private final FrequencySketch sketch;
+
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    // LRU policy keeps everything in probation list
+    private final AccessList<K, V> window = new AccessList<>();
+    private final AccessList<K, V> probation = new AccessList<>();
+    private final AccessList<K, V> protectedList = new AccessList<>();
+    private long weight;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    ////////// PUBLIC METHODS //////////
+
+    /**
+     * Constructs empty cache holding at most maximumSize entries.
+     *
+     * @param maximumSize maximal number of entries
+     * @param policy eviction policy
+     * @throws IllegalArgumentException if maximumSize is negative
+     */
+    BoundedCache(long maximumSize, Policy policy) throws IllegalArgumentException {
+        this(maximumSize, policy, null, null);
+    }
+
+    /**
+     * Constructs empty cache of bounded total weight.
+     *
+     * @param maximumWeight maximal total weight of entries
+     * @param policy eviction policy
+     * @param weigher weigher of entries, null if every entry weighs 1
+     * @param listener receiver of evicted entries or null
+     * @throws IllegalArgumentException if maximumWeight is negative
+     */
+    BoundedCache(long maximumWeight, Policy policy, Weigher<K, V> weigher, EvictionListener<K, V> listener)
+            throws IllegalArgumentException {
+        if (maximumWeight < 0) {
+            throw new IllegalArgumentException("Maximal weight must not be negative.");
+        }
+
+        this.maximumWeight = maximumWeight;
+        this.policy = policy;
+        this.weigher = weigher;
+        this.listener = listener;
+        data = new HashMap<>();
+
+        if (policy == Policy.TINY_LFU) {
+            windowMaximum = Math.max(1, maximumWeight / 100);
+            protectedMaximum = (maximumWeight - windowMaximum) * 8 / 10;
+            sketch = new FrequencySketch();
+        }
+        else {
+            windowMaximum = 0;
+            protectedMaximum = 0;
+            sketch = null;
+        }
+    }
+
+    /**
+     * Return number of entries in the cache.
+     *
+     * @return size
+     */
+    public int size() {
+        return data.size();
+    }
+
+    /**
+     * Check whether the cache is empty.
+     *
+     * @return empty or not
+     */
+    public boolean isEmpty() {
+        return data.isEmpty();
+    }
+
+    /**
+     * Return total weight of entries in the cache.
+     *
+     * @return total weight
+     */
+    public long weightedSize() {
+        return weight;
+    }
+
+    /**
+     * Get value with specified key and mark it as recently used.
+     *
+     * @param k key to be found
+     * @return element with given key or null if it doesn't exist
+     */
+    public V get(K k) {
+        int hash = Hasher.getHashCode(k);
+        if (sketch != null) {
+            sketch.increment(hash);
+        }
+
+        Node<K, V> node = data.get(k);
+        if (node == null) {
+            missCount++;
+            return null;
+        }
+
+        hitCount++;
+        onAccess(node);
+
+        return node.value;
+    }
+
+    /**
+     * Check whether there is an entry with specified key.
+     * Unlike get, it is not counted as an access: hit and miss counts,
+     * frequencies and the order of eviction stay the same.
+     *
+     * @param k key to be found
+     * @return true if there is such key, false otherwise
+     */
+    @Override
+    public boolean containsKey(K k) {
+        return data.containsKey(k);
+    }
+
+    /**
+     * Put element with specified key and value and return old value.
+     * Entries are evicted afterwards if the total weight is too high,
+     * possibly including the new one.
+     *
+     * @param k key
+     * @param v value
+     * @return old value with specified key or null if it didn't exist
+     * @throws IllegalArgumentException if the weigher returns negative weight
+     */
+    public V put(K k, V v) throws IllegalArgumentException {
+        int newWeight = weigh(k, v);
+        Node<K, V> node = data.get(k);
+
+        if (node != null) {
+            V old = node.value;
+            node.value = v;
+            // the list keeps its own total, so it has to see the change too
+            listOf(node).weight += newWeight - node.weight;
+            weight += newWeight - node.weight;
+            node.weight = newWeight;
+            onAccess(node);
+            evict();
+
+            return old;
+        }
+
+        if (sketch != null) {
+            sketch.increment(Hasher.getHashCode(k));
+            sketch.ensureCapacity(data.size() + 1);
+        }
+
+        node = new Node<>(k, v, newWeight);
+        data.put(k, node);
+        weight += newWeight;
+
+        if (policy == Policy.TINY_LFU) {
+            node.queue = WINDOW;
+            window.addLast(node);
+        }
+        else {
+            node.queue = PROBATION;
+            probation.addLast(node);
+        }
+        evict();
+
+        return null;
+    }
+
+    /**
+     * Remove the element with specified key and return its value or null
+     * if it didn't exist. Eviction listener is not called.
+     *
+     * @param k key
+     * @return the removed value or null
+     */
+    public V remove(K k) {
+        Node<K, V> node = data.remove(k);
+
+        if (node == null) {
+            return null;
+        }
+
+        listOf(node).remove(node);
+        weight -= node.weight;
+
+        return node.value;
+    }
+
+    /**
+     * Return number of get calls which found the key.
+     *
+     * @return number of hits
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Return number of get calls which did not find the key.
+     *
+     * @return number of misses
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Return number of entries evicted because of the weight limit.
+     *
+     * @return number of evictions
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Return share of get calls which found the key.
+     *
+     * @return hit rate or 0 if there were no calls
+     */
+    public double getHitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 0 : hitCount * 1.0 / requests;
+    }
+
+    /// VIEWS OF BOUNDEDCACHE ///
+
+    /**
+     * Returns the set of keys of the cache.
+     * Does not change recency of entries.
+     *
+     * @return set of keys
+     */
+    public Set<K> keySet() {
+        return data.keySet();
+    }
+
+    /**
+     * Returns the collection of values in the cache.
+     * Does not change recency of entries.
+     *
+     * @return collection of values
+     */
+    public Collection<V> values() {
+        final Collection<Node<K, V>> nodes = data.values();
+
+        return new Collection<V>() {
+            public int size() {
+                return nodes.size();
+            }
+
+            public boolean isEmpty() {
+                return nodes.isEmpty();
+            }
+
+            public Iterator<V> iterator() {
+                final Iterator<Node<K, V>> iterator = nodes.iterator();
+
+                return new Iterator<V>() {
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    public V next() throws NoSuchElementException {
+                        return iterator.next().value;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Returns the set of entries of the cache.
+     * Does not change recency of entries.
+     *
+     * @return set of entries
+     */
+    public Set<Entry<K, V>> entrySet() {
+        final Set<Entry<K, Node<K, V>>> entries = data.entrySet();
+
+        return new Set<Entry<K, V>>() {
+            public int size() {
+                return entries.size();
+            }
+
+            public boolean isEmpty() {
+                return entries.isEmpty();
+            }
+
+            public boolean contains(Object o) {
+                return entries.contains(o);
+            }
+
+            public Iterator<Entry<K, V>> iterator() {
+                final Iterator<Entry<K, Node<K, V>>> iterator = entries.iterator();
+
+                return new Iterator<Entry<K, V>>() {
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    public Entry<K, V> next() throws NoSuchElementException {
+                        Entry<K, Node<K, V>> entry = iterator.next();
+                        return new Entry<>(entry.key, entry.value.value);
+                    }
+                };
+            }
+        };
+    }
+
+    ////////// PRIVATE METHODS //////////
+
+    /**
+     * Returns weight of the entry given by the weigher.
+     *
+     * @param k key
+     * @param v value
+     * @return weight of the entry, 1 if there is no weigher
+     * @throws IllegalArgumentException if the weight is negative
+     */
+    private int weigh(K k, V v) throws IllegalArgumentException {
+        if (weigher == null) {
+            return 1;
+        }
+
+        int result = weigher.weigh(k, v);
+        if (result < 0) {
+            throw new IllegalArgumentException("Weight of an entry must not be negative.");
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the list the node is linked into.
+     *
+     * @param node node of the cache
+     * @return list of the node
+     */
+    private AccessList<K, V> listOf(Node<K, V> node) {
+        if (node.queue == WINDOW) {
+            return window;
+        }
+
+        return node.queue == PROTECTED ? protectedList : probation;
+    }
+
+    /**
+     * Updates position of the requested node.
+     * In LRU and in the window the node becomes the most recent one.
+     * With TINY_LFU a node requested in probation is promoted to the
+     * protected space, whose oldest entries are demoted if it gets full.
+     *
+     * @param node requested node
+     */
+    private void onAccess(Node<K, V> node) {
+        if (policy == Policy.LRU || node.queue == WINDOW) {
+            listOf(node).moveToLast(node);
+            return;
+        }
+
+        if (node.queue == PROTECTED) {
+            protectedList.moveToLast(node);
+            return;
+        }
+
+        probation.remove(node);
+        node.queue = PROTECTED;
+        protectedList.addLast(node);
+
+        while (protectedList.weight > protectedMaximum && protectedList.first() != node) {
+            Node<K, V> demoted = protectedList.first();
+            protectedList.remove(demoted);
+            demoted.queue = PROBATION;
+            probation.addLast(demoted);
+        }
+    }
+
+    /**
+     * Evicts entries while the total weight is above the maximum.
+     * With TINY_LFU entries overflowing the window move to probation
+     * first, then the newest entry of probation (the candidate) competes
+     * with the oldest one (the victim) and the less frequent one goes.
+     */
+    private void evict() {
+        if (policy == Policy.LRU) {
+            while (weight > maximumWeight) {
+                evict(probation.first());
+            }
+            return;
+        }
+
+        while (window.weight > windowMaximum) {
+            Node<K, V> node = window.first();
+            window.remove(node);
+            node.queue = PROBATION;
+            probation.addLast(node);
+        }
+
+        while (weight > maximumWeight) {
+            Node<K, V> victim = probation.first();
+
+            if (victim == null) {
+                victim = protectedList.first() != null ? protectedList.first() : window.first();
+                evict(victim);
+                continue;
+            }
+
+            Node<K, V> candidate = probation.last();
+            if (candidate != victim
+                    && sketch.frequency(Hasher.getHashCode(candidate.key))
+                    <= sketch.frequency(Hasher.getHashCode(victim.key))) {
+                victim = candidate;
+            }
+
+            evict(victim);
+        }
+    }
+
+    /**
+     * Removes the node because of the weight limit and notifies the listener.
+     *
+     * @param node node to be evicted
+     */
+    private void evict(Node<K, V> node) {
+        data.remove(node.key);
+        listOf(node).remove(node);
+        weight -= node.weight;
+        evictionCount++;
+
+        if (listener != null) {
+            listener.onEviction(node.key, node.value);
+        }
+    }
+
+    /**
+     * Entry of the cache linked into one of access lists.
+     *
+     * @param <K> type of keys
+     * @param <V> type of values
+     */
+    private static class Node<K, V> {
+        final K key;
+        V value;
+        int weight;
+        // list the node belongs to
+        int queue;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        /**
+         * Creates new node.
+         *
+         * @param key key
+         * @param value value
+         * @param weight weight of the entry
+         */
+        Node(K key, V value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Doubly linked list of nodes from the oldest to the newest,
+     * with total weight of its nodes.
+     *
+     * @param <K> type of keys
+     * @param <V> type of values
+     */
+    private static class AccessList<K, V> {
+        private final Node<K, V> header = new Node<>(null, null, 0);
+        long weight;
+
+        /**
+         * Creates empty list.
+         */
+        AccessList() {
+            header.next = header;
+            header.prev = header;
+        }
+
+        /**
+         * Returns the oldest node.
+         *
+         * @return first node or null if the list is empty
+         */
+        Node<K, V> first() {
+            return header.next == header ? null : header.next;
+        }
+
+        /**
+         * Returns the newest node.
+         *
+         * @return last node or null if the list is empty
+         */
+        Node<K, V> last() {
+            return header.prev == header ? null : header.prev;
+        }
+
+        /**
+         * Links the node at the end.
+         *
+         * @param node node to be added
+         */
+        void addLast(Node<K, V> node) {
+            node.prev = header.prev;
+            node.next = header;
+            header.prev.next = node;
+            header.prev = node;
+            weight += node.weight;
+        }
+
+        /**
+         * Unlinks the node.
+         *
+         * @param node node of this list
+         */
+        void remove(Node<K, V> node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+            weight -= node.weight;
+        }
+
+        /**
+         * Moves the node of this list to the end.
+         *
+         * @param node node of this list
+         */
+        void moveToLast(Node<K, V> node) {
+            remove(node);
+            addLast(node);
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters estimating how often
+     * keys were requested. Counters are halved periodically,
+     * so that old popularity fades.
+     */
+    private static class FrequencySketch {
+        private static final long RESET_MASK = 0x7777777777777777L;
+        // each long holds 16 counters
+        private long[] table = new long[16];
+        private int additions;
+
+        /**
+         * Grows the table to have a counter per entry.
+         *
+         * @param entries expected number of entries
+         */
+        void ensureCapacity(int entries) {
+            if (entries <= table.length * 4) {
+                return;
+            }
+
+            int length = table.length;
+            while (length * 4 < entries) {
+                length *= 2;
+            }
+            table = new long[length];
+            additions = 0;
+        }
+
+        /**
+         * Returns estimated frequency of the key, from 0 to 15.
+         *
+         * @param hash hash code of the key
+         * @return estimated frequency
+         */
+        int frequency(int hash) {
+            int result = 15;
+
+            for (int i = 0; i < 4; i++) {
+                int mixed = mix(hash, i);
+                int shift = (mixed >>> 28) * 4;
+                result = Math.min(result, (int) ((table[mixed & (table.length - 1)] >>> shift) & 15));
+            }
+
+            return result;
+        }
+
+        /**
+         * Counts one more request of the key.
+         * After ten requests per counter word all counters are halved.
+         *
+         * @param hash hash code of the key
+         */
+        void increment(int hash) {
+            for (int i = 0; i < 4; i++) {
+                int mixed = mix(hash, i);
+                int index = mixed & (table.length - 1);
+                int shift = (mixed >>> 28) * 4;
+
+                if (((table[index] >>> shift) & 15) < 15) {
+                    table[index] += 1L << shift;
+                }
+            }
+
+            if (++additions >= table.length * 10) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & RESET_MASK;
+                }
+                additions /= 2;
+            }
+        }
+
+        /**
+         * Derives i-th independent hash of the key.
+         *
+         * @param hash hash code of the key
+         * @param i number of the row
+         * @return mixed hash
+         */
+        private static int mix(int hash, int i) {
+            return Hasher.murmur3(hash + i * 0x9E3779B9);
+        }
+    }
+}
@@ -1,3 +1,8 @@
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 public interface Collection<E> extends Iterable<E> {
     /**
      * Returns the number of elements in the collection.
@@ -12,4 +17,44 @@ public interface Collection<E> extends Iterable<E> {
      * @return true if empty, false otherwise
      */
     boolean isEmpty();
-}
\ No newline at end of file
+
+    /**
+     * Returns a Spliterator over elements of the collection.
+     * By default it is backed by the iterator and splits
+     * into batches, collections may override it with one
+     * that splits their internal storage directly.
+     *
+     * @return spliterator over elements
+     */
+    default Spliterator<E> spliterator() {
+        final Iterator<E> iterator = iterator();
+
+        return Spliterators.spliterator(new java.util.Iterator<E>() {
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            public E next() {
+                return iterator.next();
+            }
+        }, size(), 0);
+    }
+
+    /**
+     * Returns a sequential Stream over elements of the collection.
+     *
+     * @return stream of elements
+     */
+    default Stream<E> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Returns a parallel Stream over elements of the collection.
+     *
+     * @return parallel stream of elements
+     */
+    default Stream<E> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+}
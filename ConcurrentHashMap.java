@@ -0,0 +1,531 @@
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Thread-safe implementation of Map with Hashes.
+ * Key space is split into segments, each of them is a HashMap
+ * guarded by its own lock, so threads working with different
+ * segments never wait for each other.
+ * Reads are optimistic: they run without locking and are repeated
+ * under a read lock only if a write to the segment interfered.
+ * Reads write nothing to the segment, not even lookup statistics.
+ *
+ * @param <K> type of keys
+ * @param <V> type of values
+ */
+class ConcurrentHashMap<K, V> implements Map<K, V> {
+    ////////// PRIVATE FIELDS //////////
+    private final Segment<K, V>[] segments;
+    // segment index is taken from the highest bits of mixed hash
+    private final int segmentShift;
+
+    ////////// PUBLIC METHODS //////////
+
+    /**
+     * Constructs empty ConcurrentHashMap with 16 segments.
+     */
+    ConcurrentHashMap() {
+        this(16);
+    }
+
+    /**
+     * Constructs empty ConcurrentHashMap.
+     * Number of segments is rounded up to a power of two.
+     *
+     * @param concurrencyLevel expected number of concurrently writing threads
+     * @throws IllegalArgumentException if concurrencyLevel is not positive
+     */
+    @SuppressWarnings("unchecked")
+    ConcurrentHashMap(int concurrencyLevel) throws IllegalArgumentException {
+        if (concurrencyLevel < 1) {
+            throw new IllegalArgumentException("Concurrency level must be positive.");
+        }
+
+        int bits = 0;
+        while ((1 << bits) < concurrencyLevel && bits < 16) {
+            bits++;
+        }
+
+        segments = (Segment<K, V>[]) new Segment<?, ?>[1 << bits];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment<>();
+        }
+        segmentShift = 32 - bits;
+    }
+
+    /**
+     * Return number of entries in the ConcurrentHashMap.
+     * Segments are read one by one, so under concurrent
+     * modification the result is an estimate.
+     *
+     * @return size
+     */
+    public int size() {
+        int size = 0;
+
+        for (Segment<K, V> segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                size += segment.map.size();
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Check whether the ConcurrentHashMap is empty.
+     *
+     * @return empty or not
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Get value with specified key.
+     * Does not block unless the segment is being written to,
+     * and writes nothing to the segment, so readers do not
+     * contend with each other.
+     *
+     * @param k key to be found
+     * @return element with given key or null if it doesn't exist
+     */
+    public V get(K k) {
+        return read(k, HashMap::peek);
+    }
+
+    /**
+     * Check whether there is an entry with specified key.
+     * Unlike get, tells a key mapped to null from a missing one.
+     * Does not block unless the segment is being written to.
+     *
+     * @param k key to be found
+     * @return true if there is such key, false otherwise
+     */
+    @Override
+    public boolean containsKey(K k) {
+        return read(k, HashMap::peekContains);
+    }
+
+    /**
+     * Put element with specified key and value and return old value.
+     *
+     * @param k key
+     * @param v value
+     * @return old value with specified key or null if it didn't exist
+     */
+    public V put(K k, V v) {
+        Segment<K, V> segment = segmentFor(k);
+
+        long stamp = segment.lock.writeLock();
+        try {
+            return segment.map.put(k, v);
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Remove the element with specified key and return its value or null
+     * if it didn't exist.
+     *
+     * @param k key
+     * @return the removed value or null
+     */
+    public V remove(K k) {
+        Segment<K, V> segment = segmentFor(k);
+
+        long stamp = segment.lock.writeLock();
+        try {
+            return segment.map.remove(k);
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Get value with specified key or the default one if there is no such key.
+     *
+     * @param k key to be found
+     * @param defaultValue value returned if the key doesn't exist
+     * @return element with given key or defaultValue
+     */
+    @Override
+    public V getOrDefault(K k, V defaultValue) {
+        V v = get(k);
+        return v != null ? v : defaultValue;
+    }
+
+    /**
+     * Put element with specified key and value only if there is no such key.
+     * Check and insertion are done atomically.
+     *
+     * @param k key
+     * @param v value
+     * @return current value with specified key or null if it didn't exist
+     */
+    @Override
+    public V putIfAbsent(K k, V v) {
+        return write(k, map -> map.putIfAbsent(k, v));
+    }
+
+    /**
+     * Computes value for the key if there is no such key and puts it,
+     * unless the computed value is null.
+     * The function is called under the lock of the segment,
+     * so it must not use this map.
+     *
+     * @param k key
+     * @param mapping function computing value from the key
+     * @return current or computed value, null if computed value is null
+     */
+    @Override
+    public V computeIfAbsent(K k, Function<? super K, ? extends V> mapping) {
+        return write(k, map -> map.computeIfAbsent(k, mapping));
+    }
+
+    /**
+     * Computes new value for the key from the key and its current value
+     * (null if there is no such key) and puts it.
+     * If the new value is null, the key is removed.
+     * The function is called under the lock of the segment,
+     * so it must not use this map.
+     *
+     * @param k key
+     * @param remapping function computing new value
+     * @return new value
+     */
+    @Override
+    public V compute(K k, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        return write(k, map -> map.compute(k, remapping));
+    }
+
+    /**
+     * Puts the value if there is no such key, otherwise combines
+     * current value with the given one and puts the result.
+     * If the result is null, the key is removed.
+     * The function is called under the lock of the segment,
+     * so it must not use this map.
+     *
+     * @param k key
+     * @param v value to be put or combined
+     * @param remapping function combining current and given values
+     * @return new value
+     */
+    @Override
+    public V merge(K k, V v, BiFunction<? super V, ? super V, ? extends V> remapping) {
+        return write(k, map -> map.merge(k, v, remapping));
+    }
+
+    /// VIEWS OF CONCURRENTHASHMAP ///
+
+    /**
+     * Returns the set of entries of the ConcurrentHashMap.
+     * The set is a snapshot: every segment is copied under its
+     * read lock, later changes of the map are not reflected.
+     *
+     * @return set of entries
+     */
+    public Set<Entry<K, V>> entrySet() {
+        return new EntrySet(snapshot());
+    }
+
+    /**
+     * Returns the set of keys of the ConcurrentHashMap.
+     * The set is a snapshot, same as entrySet.
+     *
+     * @return set of keys
+     */
+    public Set<K> keySet() {
+        return new KeySet(entrySet());
+    }
+
+    /**
+     * Returns the collection of values in the ConcurrentHashMap.
+     * The collection is a snapshot, same as entrySet.
+     *
+     * @return collection of values
+     */
+    public Collection<V> values() {
+        return new ValueCollection(entrySet());
+    }
+
+    /**
+     * Non-mutable snapshot set of entries of the ConcurrentHashMap.
+     */
+    @SuppressWarnings("unchecked")
+    private class EntrySet implements Set<Entry<K, V>> {
+        private final ArrayList<Entry<K, V>> entries;
+
+        /**
+         * Constructs an EntrySet over the copied entries.
+         *
+         * @param entries entries of all segments
+         */
+        private EntrySet(ArrayList<Entry<K, V>> entries) {
+            this.entries = entries;
+        }
+
+        /**
+         * Checks whether the set is empty.
+         *
+         * @return true if empty, false otherwise
+         */
+        public boolean isEmpty() {
+            return entries.isEmpty();
+        }
+
+        /**
+         * Returns the size of the set.
+         *
+         * @return size of the set
+         */
+        public int size() {
+            return entries.size();
+        }
+
+        /**
+         * Returns an iterator over elements of the set.
+         *
+         * @return iterator over elements
+         */
+        public Iterator<Entry<K, V>> iterator() {
+            return entries.iterator();
+        }
+
+        /**
+         * Checks whether the key of the entry is in the map.
+         *
+         * @param o object to be checked
+         * @return true if contains, false otherwise
+         */
+        public boolean contains(Object o) {
+            return containsKey((K) o);
+        }
+    }
+
+    /**
+     * Non-mutable snapshot set of keys of the ConcurrentHashMap.
+     */
+    @SuppressWarnings("unchecked")
+    private class KeySet implements Set<K> {
+        private final Set<Entry<K, V>> data;
+
+        /**
+         * Constructs a KeySet view of the given entries.
+         *
+         * @param data snapshot of entries
+         */
+        private KeySet(Set<Entry<K, V>> data) {
+            this.data = data;
+        }
+
+        /**
+         * Checks whether the set is empty.
+         *
+         * @return true if empty, false otherwise
+         */
+        public boolean isEmpty() {
+            return data.isEmpty();
+        }
+
+        /**
+         * Returns the size of the set.
+         *
+         * @return size of the set
+         */
+        public int size() {
+            return data.size();
+        }
+
+        /**
+         * Returns an iterator over elements of the set.
+         *
+         * @return iterator over elements
+         */
+        public Iterator<K> iterator() {
+            final Iterator<Entry<K, V>> iterator = data.iterator();
+
+            return new Iterator<K>() {
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                public K next() throws NoSuchElementException {
+                    return iterator.next().key;
+                }
+            };
+        }
+
+        /**
+         * Checks whether the element is in the map.
+         *
+         * @param o object to be checked
+         * @return true if contains, false otherwise
+         */
+        public boolean contains(Object o) {
+            return data.contains(o);
+        }
+    }
+
+    /**
+     * Non-mutable snapshot collection of values of the ConcurrentHashMap.
+     */
+    private class ValueCollection implements Collection<V> {
+        private final Set<Entry<K, V>> data;
+
+        /**
+         * Constructs a ValueCollection view of the given entries.
+         *
+         * @param data snapshot of entries
+         */
+        private ValueCollection(Set<Entry<K, V>> data) {
+            this.data = data;
+        }
+
+        /**
+         * Checks whether the collection is empty.
+         *
+         * @return true if empty, false otherwise
+         */
+        public boolean isEmpty() {
+            return data.isEmpty();
+        }
+
+        /**
+         * Returns the size of the collection.
+         *
+         * @return size of the collection
+         */
+        public int size() {
+            return data.size();
+        }
+
+        /**
+         * Returns an iterator over elements of the collection.
+         *
+         * @return iterator over elements
+         */
+        public Iterator<V> iterator() {
+            final Iterator<Entry<K, V>> iterator = data.iterator();
+
+            return new Iterator<V>() {
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                public V next() throws NoSuchElementException {
+                    return iterator.next().value;
+                }
+            };
+        }
+    }
+
+    ////////// PRIVATE METHODS //////////
+
+    /**
+     * Chooses segment responsible for the key.
+     * Hash is multiplied by the golden ratio constant and its highest
+     * bits are taken, so the choice does not depend on the lowest bits
+     * used by the segment itself to find a slot.
+     *
+     * @param key key to be placed
+     * @return segment for the key
+     */
+    private Segment<K, V> segmentFor(K key) {
+        if (segments.length == 1) {
+            return segments[0];
+        }
+
+        int mixed = Hasher.getHashCode(key) * 0x9E3779B9;
+        return segments[mixed >>> segmentShift];
+    }
+
+    /**
+     * Applies the lookup to the segment of the key optimistically,
+     * and again under its read lock if a write interfered.
+     * The lookup must write nothing to the HashMap and must not fail
+     * on a table changed under it.
+     *
+     * @param key key to be found
+     * @param lookup lookup of the key in the HashMap of the segment
+     * @param <R> type of the result
+     * @return result of the lookup
+     */
+    private <R> R read(K key, BiFunction<HashMap<K, V>, K, R> lookup) {
+        Segment<K, V> segment = segmentFor(key);
+
+        long stamp = segment.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            R result = lookup.apply(segment.map, key);
+            if (segment.lock.validate(stamp)) {
+                return result;
+            }
+        }
+
+        stamp = segment.lock.readLock();
+        try {
+            return lookup.apply(segment.map, key);
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Applies the operation to the segment of the key under its write lock.
+     *
+     * @param key key the operation works with
+     * @param operation operation on the HashMap of the segment
+     * @param <R> type of the result
+     * @return result of the operation
+     */
+    private <R> R write(K key, Function<HashMap<K, V>, R> operation) {
+        Segment<K, V> segment = segmentFor(key);
+
+        long stamp = segment.lock.writeLock();
+        try {
+            return operation.apply(segment.map);
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Copies entries of all segments, each under its read lock.
+     *
+     * @return list of copied entries
+     */
+    private ArrayList<Entry<K, V>> snapshot() {
+        ArrayList<Entry<K, V>> entries = new ArrayList<>();
+
+        for (Segment<K, V> segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                Iterator<Entry<K, V>> iterator = segment.map.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    entries.add(entries.size(), iterator.next());
+                }
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * Part of the ConcurrentHashMap with its own lock.
+     *
+     * @param <K> type of keys
+     * @param <V> type of values
+     */
+    private static class Segment<K, V> {
+        final StampedLock lock = new StampedLock();
+        final HashMap<K, V> map = new HashMap<>();
+    }
+}
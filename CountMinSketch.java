@@ -0,0 +1,167 @@
+/**
+ * Count-Min sketch estimating how many times elements were counted
+ * in fixed memory.
+ * Keeps depth rows of width counters; every element adds to one
+ * counter per row, and the estimate is the smallest of them.
+ * The estimate is never below the true count, and exceeds it by
+ * more than epsilon * (total count) with probability at most delta.
+ * Elements are hashed to 64 bits by Hasher.getHashCode64; the two
+ * halves of the hash give counters of all rows (double hashing).
+ * Sketches of the same dimensions can be merged.
+ *
+ * @param <E> type of elements
+ */
+class CountMinSketch<E> {
+    /**
+     * Largest number of counters of a sketch, 1 GiB of longs.
+     */
+    static final int MAX_COUNTERS = 1 << 27;
+
+    ////////// PRIVATE FIELDS //////////
+    private final int width;
+    private final int depth;
+    // row after row
+    private final long[] counts;
+    private long totalCount;
+    private final double epsilon;
+    private final double delta;
+
+    ////////// PUBLIC METHODS //////////
+
+    /**
+     * Constructs empty CountMinSketch with given error bounds.
+     * Width is e / epsilon and depth is ln(1 / delta).
+     *
+     * @param epsilon overestimation relative to the total count
+     * @param delta probability of exceeding the overestimation
+     * @throws IllegalArgumentException if epsilon or delta is not in (0, 1)
+     * or the sketch would have more than MAX_COUNTERS counters
+     */
+    CountMinSketch(double epsilon, double delta) throws IllegalArgumentException {
+        if (!(epsilon > 0 && epsilon < 1)) {
+            throw new IllegalArgumentException("Epsilon must be in (0, 1).");
+        }
+        if (!(delta > 0 && delta < 1)) {
+            throw new IllegalArgumentException("Delta must be in (0, 1).");
+        }
+
+        double columns = Math.ceil(Math.E / epsilon);
+        double rows = Math.max(1, Math.ceil(Math.log(1 / delta)));
+        if (columns * rows > MAX_COUNTERS) {
+            throw new IllegalArgumentException("Sketch for such epsilon and delta would need "
+                    + (long) (columns * rows) + " counters, at most " + MAX_COUNTERS + " are allowed.");
+        }
+
+        this.epsilon = epsilon;
+        this.delta = delta;
+        width = (int) columns;
+        depth = (int) rows;
+        counts = new long[width * depth];
+    }
+
+    /**
+     * Counts the element once.
+     *
+     * @param e element to be counted
+     */
+    public void add(E e) {
+        add(e, 1);
+    }
+
+    /**
+     * Counts the element given number of times.
+     *
+     * @param e element to be counted
+     * @param count number of times
+     * @throws IllegalArgumentException if count is negative
+     */
+    public void add(E e, long count) throws IllegalArgumentException {
+        if (count < 0) {
+            throw new IllegalArgumentException("Count must not be negative.");
+        }
+
+        long hash = Hasher.getHashCode64(e);
+        int first = (int) hash;
+        int second = (int) (hash >>> 32);
+
+        for (int row = 0; row < depth; row++) {
+            counts[row * width + column(first + row * second)] += count;
+        }
+        totalCount += count;
+    }
+
+    /**
+     * Estimates how many times the element was counted.
+     *
+     * @param e element to be found
+     * @return estimated count, never below the true one
+     */
+    public long estimateCount(E e) {
+        long hash = Hasher.getHashCode64(e);
+        int first = (int) hash;
+        int second = (int) (hash >>> 32);
+        long result = Long.MAX_VALUE;
+
+        for (int row = 0; row < depth; row++) {
+            result = Math.min(result, counts[row * width + column(first + row * second)]);
+        }
+
+        return result;
+    }
+
+    /**
+     * Adds all counts of the other sketch.
+     *
+     * @param other sketch to be merged
+     * @throws IllegalArgumentException if sketches have different dimensions
+     */
+    public void merge(CountMinSketch<E> other) throws IllegalArgumentException {
+        if (other.width != width || other.depth != depth) {
+            throw new IllegalArgumentException("Sketches must have the same dimensions.");
+        }
+
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+    }
+
+    /**
+     * Returns sum of all counts.
+     *
+     * @return total count
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Returns overestimation relative to the total count.
+     *
+     * @return epsilon
+     */
+    public double getEpsilon() {
+        return epsilon;
+    }
+
+    /**
+     * Returns probability of exceeding the overestimation.
+     *
+     * @return delta
+     */
+    public double getDelta() {
+        return delta;
+    }
+
+    ////////// PRIVATE METHODS //////////
+
+    /**
+     * Maps hash of a row to its column without division.
+     *
+     * @param hash hash for the row
+     * @return index of the column
+     */
+    private int column(int hash) {
+        return (int) (((hash & 0xFFFFFFFFL) * width) >>> 32);
+    }
+}
@@ -0,0 +1,332 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Cuckoo filter: approximate set which, unlike Bloom filter,
+ * supports deletion of elements.
+ * Keeps a short fingerprint of every element in one of two buckets
+ * of four slots. The second bucket is derived from the first one and
+ * the fingerprint (partial-key cuckoo hashing), so fingerprints can be
+ * moved between buckets without knowing elements.
+ * May answer that an element is present when it is not, but never
+ * the other way round, as long as only added elements are removed.
+ * Hashes are taken from Hasher.
+ *
+ * @param <E> type of elements
+ */
+class CuckooFilter<E> {
+    ////////// PRIVATE FIELDS //////////
+    private static final int MAGIC = 0x434B4F4F;
+    private static final int BUCKET_SIZE = 4;
+    // displacements tried before the filter is considered full
+    private static final int MAX_KICKS = 500;
+
+    // fingerprints, 0 is a free slot
+    private final short[] slots;
+    private final int bucketCount;
+    private final int fingerprintBits;
+    private int size;
+    // fingerprint left without place by the last failed displacement, 0 if none
+    private short victim;
+    private int victimBucket;
+    // state of the generator choosing fingerprints to displace
+    private int random = 0x2545F491;
+
+    ////////// PUBLIC METHODS //////////
+
+    /**
+     * Constructs empty CuckooFilter for expected number of elements.
+     * Fingerprint length is chosen for the given rate of false
+     * positives, from 4 to 16 bits.
+     *
+     * @param expectedSize expected number of elements
+     * @param falsePositiveRate wanted share of false positives
+     * @throws IllegalArgumentException if expectedSize is negative or
+     * falsePositiveRate is not in (0, 1)
+     */
+    CuckooFilter(int expectedSize, double falsePositiveRate) throws IllegalArgumentException {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size must not be negative.");
+        }
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("False positive rate must be in (0, 1).");
+        }
+
+        // a lookup compares with 2 * BUCKET_SIZE fingerprints
+        double bitsNeeded = Math.log(2.0 * BUCKET_SIZE / falsePositiveRate) / Math.log(2);
+        fingerprintBits = (int) Math.max(4, Math.min(16, Math.ceil(bitsNeeded)));
+
+        // buckets are filled up to 95%
+        long needed = (long) Math.ceil(Math.max(1, expectedSize) / (0.95 * BUCKET_SIZE));
+        int count = 2;
+        while (count < needed && count < (1 << 28)) {
+            count *= 2;
+        }
+        bucketCount = count;
+        slots = new short[bucketCount * BUCKET_SIZE];
+    }
+
+    /**
+     * Constructs CuckooFilter with given contents.
+     *
+     * @param slots fingerprints of all buckets
+     * @param fingerprintBits length of fingerprints
+     * @param size number of elements
+     */
+    private CuckooFilter(short[] slots, int fingerprintBits, int size) {
+        this.slots = slots;
+        this.bucketCount = slots.length / BUCKET_SIZE;
+        this.fingerprintBits = fingerprintBits;
+        this.size = size;
+    }
+
+    /**
+     * Return number of elements in the filter.
+     *
+     * @return size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds the element.
+     * Adding the same element twice takes two slots.
+     *
+     * @param e element to be added
+     * @return true if added, false if the filter is full
+     */
+    public boolean add(E e) {
+        if (victim != 0) {
+            return false;
+        }
+
+        int hash = Hasher.getHashCode(e);
+        short fingerprint = fingerprint(hash);
+        int bucket = firstBucket(hash);
+
+        if (insertInto(bucket, fingerprint) || insertInto(otherBucket(bucket, fingerprint), fingerprint)) {
+            size++;
+            return true;
+        }
+
+        bucket = (random & 1) == 0 ? bucket : otherBucket(bucket, fingerprint);
+        for (int kick = 0; kick < MAX_KICKS; kick++) {
+            random ^= random << 13;
+            random ^= random >>> 17;
+            random ^= random << 5;
+            int index = bucket * BUCKET_SIZE + (random & (BUCKET_SIZE - 1));
+
+            short displaced = slots[index];
+            slots[index] = fingerprint;
+            fingerprint = displaced;
+            bucket = otherBucket(bucket, fingerprint);
+
+            if (insertInto(bucket, fingerprint)) {
+                size++;
+                return true;
+            }
+        }
+
+        // keep the homeless fingerprint, so no element is lost
+        victim = fingerprint;
+        victimBucket = bucket;
+        size++;
+        return true;
+    }
+
+    /**
+     * Checks whether the element may be in the filter.
+     *
+     * @param e element to be checked
+     * @return false if the element is surely not in the filter, true if it probably is
+     */
+    public boolean mightContain(E e) {
+        int hash = Hasher.getHashCode(e);
+        short fingerprint = fingerprint(hash);
+        int first = firstBucket(hash);
+        int second = otherBucket(first, fingerprint);
+
+        if (victim == fingerprint && (victimBucket == first || victimBucket == second)) {
+            return true;
+        }
+
+        return indexIn(first, fingerprint) >= 0 || indexIn(second, fingerprint) >= 0;
+    }
+
+    /**
+     * Removes the element, which must have been added before,
+     * otherwise a fingerprint of another element may be removed.
+     *
+     * @param e element to be removed
+     * @return true if a fingerprint of the element was found and removed
+     */
+    public boolean remove(E e) {
+        int hash = Hasher.getHashCode(e);
+        short fingerprint = fingerprint(hash);
+        int first = firstBucket(hash);
+        int second = otherBucket(first, fingerprint);
+
+        if (victim == fingerprint && (victimBucket == first || victimBucket == second)) {
+            victim = 0;
+            size--;
+            return true;
+        }
+
+        int index = indexIn(first, fingerprint);
+        if (index < 0) {
+            index = indexIn(second, fingerprint);
+        }
+        if (index < 0) {
+            return false;
+        }
+
+        slots[index] = 0;
+        size--;
+
+        // the freed slot may take the homeless fingerprint
+        if (victim != 0 && (insertInto(victimBucket, victim)
+                || insertInto(otherBucket(victimBucket, victim), victim))) {
+            victim = 0;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns length of fingerprints.
+     *
+     * @return bits per fingerprint
+     */
+    public int getFingerprintBits() {
+        return fingerprintBits;
+    }
+
+    /**
+     * Writes the filter to the stream.
+     *
+     * @param out stream to write to
+     * @throws IOException if writing fails
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(fingerprintBits);
+        out.writeInt(bucketCount);
+        out.writeInt(size);
+        out.writeShort(victim);
+        out.writeInt(victimBucket);
+        for (short slot : slots) {
+            out.writeShort(slot);
+        }
+    }
+
+    /**
+     * Reads the filter written by writeTo.
+     *
+     * @param in stream to read from
+     * @param <E> type of elements
+     * @return read filter
+     * @throws IOException if reading fails or the stream holds no filter
+     */
+    static <E> CuckooFilter<E> readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Stream does not hold a CuckooFilter.");
+        }
+
+        int fingerprintBits = in.readInt();
+        int bucketCount = in.readInt();
+        int size = in.readInt();
+        short victim = in.readShort();
+        int victimBucket = in.readInt();
+        if (fingerprintBits < 4 || fingerprintBits > 16 || bucketCount < 2
+                || Integer.bitCount(bucketCount) != 1 || bucketCount > (1 << 28)
+                || victimBucket < 0 || victimBucket >= bucketCount) {
+            throw new IOException("CuckooFilter header is corrupted.");
+        }
+
+        short[] slots = new short[bucketCount * BUCKET_SIZE];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = in.readShort();
+        }
+
+        CuckooFilter<E> filter = new CuckooFilter<>(slots, fingerprintBits, size);
+        filter.victim = victim;
+        filter.victimBucket = victimBucket;
+        return filter;
+    }
+
+    ////////// PRIVATE METHODS //////////
+
+    /**
+     * Calculates fingerprint of the element, never 0.
+     *
+     * @param hash hash code of the element
+     * @return fingerprint
+     */
+    private short fingerprint(int hash) {
+        int fingerprint = Hasher.xxHash(hash) >>> (32 - fingerprintBits);
+        return (short) (fingerprint == 0 ? 1 : fingerprint);
+    }
+
+    /**
+     * Returns the first bucket of the element.
+     *
+     * @param hash hash code of the element
+     * @return index of the bucket
+     */
+    private int firstBucket(int hash) {
+        return Hasher.murmur3(hash) & (bucketCount - 1);
+    }
+
+    /**
+     * Returns the other bucket of the fingerprint.
+     * Applying it twice gives the original bucket.
+     *
+     * @param bucket one of the buckets of the fingerprint
+     * @param fingerprint fingerprint of the element
+     * @return the other bucket
+     */
+    private int otherBucket(int bucket, short fingerprint) {
+        return (bucket ^ Hasher.murmur3(fingerprint)) & (bucketCount - 1);
+    }
+
+    /**
+     * Puts the fingerprint into a free slot of the bucket.
+     *
+     * @param bucket index of the bucket
+     * @param fingerprint fingerprint to be put
+     * @return true if there was a free slot, false otherwise
+     */
+    private boolean insertInto(int bucket, short fingerprint) {
+        int start = bucket * BUCKET_SIZE;
+
+        for (int i = start; i < start + BUCKET_SIZE; i++) {
+            if (slots[i] == 0) {
+                slots[i] = fingerprint;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Finds the slot of the bucket with the fingerprint.
+     *
+     * @param bucket index of the bucket
+     * @param fingerprint fingerprint to be found
+     * @return index of the slot or -1 if there is none
+     */
+    private int indexIn(int bucket, short fingerprint) {
+        int start = bucket * BUCKET_SIZE;
+
+        for (int i = start; i < start + BUCKET_SIZE; i++) {
+            if (slots[i] == fingerprint) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
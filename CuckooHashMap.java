@@ -0,0 +1,570 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Implementation of Map with Hashes.
+ * Uses bucketized Cuckoo hashing: the table is split into buckets of
+ * four slots, and every key may only be in one of two buckets chosen
+ * by two hash functions from Hasher. Inserting into two full buckets
+ * moves one of their entries to its other bucket, and so on; entries
+ * which still find no place go to a small stash, and the table grows
+ * when the stash is full.
+ * A lookup looks at two buckets and the stash and nothing else,
+ * so its cost is bounded regardless of the load.
+ *
+ * @param <K> type of keys
+ * @param <V> type of values
+ */
+class CuckooHashMap<K, V> implements Map<K, V> {
+    ////////// PRIVATE FIELDS //////////
+    private static final int BUCKET_SIZE = 4;
+    private static final int STASH_SIZE = 4;
+    // displacements tried before an entry goes to the stash
+    private static final int MAX_KICKS = 500;
+
+    private int size;
+    // number of buckets, power of two
+    private int bucketCount;
+    // slots of the buckets followed by the stash slots
+    private Object[] keys;
+    private Object[] values;
+    // hash codes of the keys, both buckets are derived from them
+    private int[] hashes;
+    private int stashCount;
+    // grows only when many keys share hash codes, see insert
+    private int stashSize;
+    private final double maxLoadFactor = 0.9;
+    // state of the generator choosing entries to displace
+    private int random = 0x2545F491;
+
+    ////////// PUBLIC METHODS //////////
+
+    /**
+     * Constructs empty CuckooHashMap.
+     */
+    CuckooHashMap() {
+        size = 0;
+        bucketCount = 4;
+        allocate();
+    }
+
+    /**
+     * Return number of entries in the CuckooHashMap.
+     *
+     * @return size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check whether the CuckooHashMap is empty.
+     *
+     * @return empty or not
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get value with specified key.
+     *
+     * @param k key to be found
+     * @return element with given key or null if it doesn't exist
+     */
+    @SuppressWarnings("unchecked")
+    public V get(K k) {
+        int index = find(k, Hasher.getHashCode(k));
+        return index < 0 ? null : (V) values[index];
+    }
+
+    /**
+     * Check whether there is an entry with specified key.
+     * Unlike get, tells a key mapped to null from a missing one.
+     *
+     * @param k key to be found
+     * @return true if there is such key, false otherwise
+     */
+    @Override
+    public boolean containsKey(K k) {
+        return find(k, Hasher.getHashCode(k)) >= 0;
+    }
+
+    /**
+     * Put element with specified key and value and return old value.
+     *
+     * @param k key
+     * @param v value
+     * @return old value with specified key or null if it didn't exist
+     */
+    @SuppressWarnings("unchecked")
+    public V put(K k, V v) {
+        int hash = Hasher.getHashCode(k);
+        int index = find(k, hash);
+
+        if (index >= 0) {
+            V old = (V) values[index];
+            values[index] = v;
+            return old;
+        }
+
+        if (size + 1 > maxLoadFactor * bucketCount * BUCKET_SIZE) {
+            grow();
+        }
+
+        size++;
+        insert(k, v, hash);
+
+        return null;
+    }
+
+    /**
+     * Remove the element with specified key and return its value or null
+     * if it didn't exist.
+     * Frees a slot, so entries of the stash are moved back to the
+     * buckets if one of them fits.
+     *
+     * @param k key
+     * @return the removed value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(K k) {
+        int index = find(k, Hasher.getHashCode(k));
+
+        if (index < 0) {
+            return null;
+        }
+
+        V old = (V) values[index];
+        clear(index);
+        size--;
+
+        if (index >= stashStart()) {
+            stashCount--;
+        }
+        else if (stashCount > 0) {
+            unstash();
+        }
+
+        return old;
+    }
+
+    /**
+     * Returns the number of entries in the stash.
+     *
+     * @return number of stashed entries
+     */
+    public int getStashCount() {
+        return stashCount;
+    }
+
+    /// VIEWS OF CUCKOOHASHMAP ///
+
+    /**
+     * Returns the set of entries of the CuckooHashMap.
+     *
+     * @return set of entries
+     */
+    public Set<Entry<K, V>> entrySet() {
+        return new Set<Entry<K, V>>() {
+            public int size() {
+                return size;
+            }
+
+            public boolean isEmpty() {
+                return size == 0;
+            }
+
+            @SuppressWarnings("unchecked")
+            public boolean contains(Object o) {
+                return containsKey((K) o);
+            }
+
+            public Iterator<Entry<K, V>> iterator() {
+                return new SlotIterator<Entry<K, V>>() {
+                    @SuppressWarnings("unchecked")
+                    Entry<K, V> at(int index) {
+                        return new Entry<>((K) keys[index], (V) values[index]);
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Returns the set of keys of the CuckooHashMap.
+     *
+     * @return set of keys
+     */
+    public Set<K> keySet() {
+        return new Set<K>() {
+            public int size() {
+                return size;
+            }
+
+            public boolean isEmpty() {
+                return size == 0;
+            }
+
+            @SuppressWarnings("unchecked")
+            public boolean contains(Object o) {
+                return find((K) o, Hasher.getHashCode(o)) >= 0;
+            }
+
+            public Iterator<K> iterator() {
+                return new SlotIterator<K>() {
+                    @SuppressWarnings("unchecked")
+                    K at(int index) {
+                        return (K) keys[index];
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Returns the collection of values in the CuckooHashMap.
+     *
+     * @return collection of values
+     */
+    public Collection<V> values() {
+        return new Collection<V>() {
+            public int size() {
+                return size;
+            }
+
+            public boolean isEmpty() {
+                return size == 0;
+            }
+
+            public Iterator<V> iterator() {
+                return new SlotIterator<V>() {
+                    @SuppressWarnings("unchecked")
+                    V at(int index) {
+                        return (V) values[index];
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Iterator over the occupied slots of CuckooHashMap, stash included.
+     *
+     * @param <T> type of elements produced from a slot
+     */
+    private abstract class SlotIterator<T> implements Iterator<T> {
+        private int currentIndex = 0;
+
+        /**
+         * Produces element from the occupied slot.
+         *
+         * @param index index of the slot
+         * @return element of the slot
+         */
+        abstract T at(int index);
+
+        /**
+         * Checks whether there are next slots in the CuckooHashMap.
+         *
+         * @return true if there is occupied slot ahead, false otherwise
+         */
+        public boolean hasNext() {
+            while (currentIndex < keys.length) {
+                if (keys[currentIndex] != null) {
+                    return true;
+                }
+                currentIndex++;
+            }
+
+            return false;
+        }
+
+        /**
+         * Returns the element of the next occupied slot.
+         *
+         * @return the next element if it exists
+         * @throws NoSuchElementException if the element doesn't exist
+         */
+        public T next() throws NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return at(currentIndex++);
+        }
+    }
+
+    ////////// PRIVATE METHODS //////////
+
+    /**
+     * Creates empty arrays for current number of buckets.
+     */
+    private void allocate() {
+        stashSize = STASH_SIZE;
+        int slots = bucketCount * BUCKET_SIZE + stashSize;
+        keys = new Object[slots];
+        values = new Object[slots];
+        hashes = new int[slots];
+        stashCount = 0;
+    }
+
+    /**
+     * Returns index of the first stash slot.
+     *
+     * @return start of the stash
+     */
+    private int stashStart() {
+        return bucketCount * BUCKET_SIZE;
+    }
+
+    /**
+     * Returns the first bucket of the key.
+     *
+     * @param hash hash code of the key
+     * @return index of the bucket
+     */
+    private int firstBucket(int hash) {
+        return Hasher.murmur3(hash) & (bucketCount - 1);
+    }
+
+    /**
+     * Returns the second bucket of the key, which differs from the first one.
+     *
+     * @param hash hash code of the key
+     * @return index of the bucket
+     */
+    private int secondBucket(int hash) {
+        int first = firstBucket(hash);
+        int second = Hasher.xxHash(hash) & (bucketCount - 1);
+
+        return second != first ? second : first ^ 1;
+    }
+
+    /**
+     * Returns the other bucket of the key.
+     *
+     * @param hash hash code of the key
+     * @param bucket one of the buckets of the key
+     * @return the other bucket
+     */
+    private int otherBucket(int hash, int bucket) {
+        int first = firstBucket(hash);
+        return bucket == first ? secondBucket(hash) : first;
+    }
+
+    /**
+     * Finds the slot with the key: looks at both its buckets and the stash.
+     *
+     * @param key key to be found
+     * @param hash hash code of the key
+     * @return index of the slot or -1 if there is no such key
+     */
+    private int find(K key, int hash) {
+        int index = findInBucket(key, hash, firstBucket(hash));
+        if (index >= 0) {
+            return index;
+        }
+
+        index = findInBucket(key, hash, secondBucket(hash));
+        if (index >= 0 || stashCount == 0) {
+            return index;
+        }
+
+        for (int i = stashStart(); i < keys.length; i++) {
+            if (matches(i, key, hash)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Finds the slot with the key in the bucket.
+     *
+     * @param key key to be found
+     * @param hash hash code of the key
+     * @param bucket index of the bucket
+     * @return index of the slot or -1 if there is no such key
+     */
+    private int findInBucket(K key, int hash, int bucket) {
+        int start = bucket * BUCKET_SIZE;
+
+        for (int i = start; i < start + BUCKET_SIZE; i++) {
+            if (matches(i, key, hash)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Checks whether the slot holds the key.
+     *
+     * @param index index of the slot
+     * @param key key to be compared
+     * @param hash hash code of the key
+     * @return true if the slot holds the key
+     */
+    private boolean matches(int index, K key, int hash) {
+        Object current = keys[index];
+        return current != null && hashes[index] == hash && (current == key || current.equals(key));
+    }
+
+    /**
+     * Returns a free slot of the bucket.
+     *
+     * @param bucket index of the bucket
+     * @return index of the slot or -1 if the bucket is full
+     */
+    private int freeSlot(int bucket) {
+        int start = bucket * BUCKET_SIZE;
+
+        for (int i = start; i < start + BUCKET_SIZE; i++) {
+            if (keys[i] == null) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Places new entry into the table, displacing other entries if both
+     * its buckets are full. The entry left without place goes to the
+     * stash; if the stash is full, the table grows.
+     * The stash grows instead if the table is less than half full,
+     * which only happens when many keys share hash codes and no
+     * number of buckets can separate them.
+     * Assumes the key is not in the table yet.
+     *
+     * @param key key of the entry
+     * @param value value of the entry
+     * @param hash hash code of the key
+     */
+    private void insert(Object key, Object value, int hash) {
+        int bucket = firstBucket(hash);
+        int index = freeSlot(bucket);
+        if (index < 0) {
+            bucket = secondBucket(hash);
+            index = freeSlot(bucket);
+        }
+
+        for (int kick = 0; kick <= MAX_KICKS; kick++) {
+            if (index >= 0) {
+                set(index, key, value, hash);
+                return;
+            }
+
+            // the bucket is full: take its random slot and move the
+            // displaced entry forward to its other bucket, never back
+            random ^= random << 13;
+            random ^= random >>> 17;
+            random ^= random << 5;
+            index = bucket * BUCKET_SIZE + (random & (BUCKET_SIZE - 1));
+
+            Object displacedKey = keys[index];
+            Object displacedValue = values[index];
+            int displacedHash = hashes[index];
+            set(index, key, value, hash);
+
+            key = displacedKey;
+            value = displacedValue;
+            hash = displacedHash;
+            bucket = otherBucket(hash, bucket);
+            index = freeSlot(bucket);
+        }
+
+        if (stashCount == stashSize && size * 2 < bucketCount * BUCKET_SIZE) {
+            growStash();
+        }
+
+        if (stashCount < stashSize) {
+            for (int i = stashStart(); i < keys.length; i++) {
+                if (keys[i] == null) {
+                    set(i, key, value, hash);
+                    stashCount++;
+                    return;
+                }
+            }
+        }
+
+        grow();
+        insert(key, value, hash);
+    }
+
+    /**
+     * Moves entries of the stash to their buckets if they have free slots.
+     */
+    private void unstash() {
+        for (int i = stashStart(); i < keys.length; i++) {
+            if (keys[i] == null) {
+                continue;
+            }
+
+            int index = freeSlot(firstBucket(hashes[i]));
+            if (index < 0) {
+                index = freeSlot(secondBucket(hashes[i]));
+            }
+
+            if (index >= 0) {
+                set(index, keys[i], values[i], hashes[i]);
+                clear(i);
+                stashCount--;
+            }
+        }
+    }
+
+    /**
+     * Writes the entry into the slot.
+     *
+     * @param index index of the slot
+     * @param key key of the entry
+     * @param value value of the entry
+     * @param hash hash code of the key
+     */
+    private void set(int index, Object key, Object value, int hash) {
+        keys[index] = key;
+        values[index] = value;
+        hashes[index] = hash;
+    }
+
+    /**
+     * Empties the slot.
+     *
+     * @param index index of the slot
+     */
+    private void clear(int index) {
+        keys[index] = null;
+        values[index] = null;
+    }
+
+    /**
+     * Doubles the stash keeping all entries in place.
+     */
+    private void growStash() {
+        stashSize *= 2;
+        keys = Arrays.copyOf(keys, stashStart() + stashSize);
+        values = Arrays.copyOf(values, stashStart() + stashSize);
+        hashes = Arrays.copyOf(hashes, stashStart() + stashSize);
+    }
+
+    /**
+     * Doubles number of buckets and places all entries again.
+     */
+    private void grow() {
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        int[] oldHashes = hashes;
+        bucketCount *= 2;
+        allocate();
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                insert(oldKeys[i], oldValues[i], oldHashes[i]);
+            }
+        }
+    }
+}
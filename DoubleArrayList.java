@@ -0,0 +1,399 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.DoubleStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Class implementing Array based List of doubles.
+ * Values are kept unboxed in a single double[], so they take 8 bytes each
+ * and scans read memory sequentially. Methods with Double in the name and
+ * aggregates work without boxing; methods of List box values.
+ */
+class DoubleArrayList implements List<Double> {
+    // current size
+    private int size;
+    private double[] data;
+
+    /**
+     * Constructs empty array-based list.
+     */
+    DoubleArrayList() {
+        data = new double[20];
+        size = 0;
+    }
+
+    /**
+     * Return size of the list.
+     *
+     * @return size
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Check whether the list is empty.
+     *
+     * @return empty or not
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Get i-th element.
+     *
+     * @param i index of the element
+     *          from 0 to size-1
+     * @return element at the index
+     * @throws IndexOutOfBoundsException
+     * if index is not in the list
+     */
+    public Double get(int i) throws IndexOutOfBoundsException {
+        return getDouble(i);
+    }
+
+    /**
+     * Get i-th element without boxing.
+     *
+     * @param i index of the element
+     *          from 0 to size-1
+     * @return element at the index
+     * @throws IndexOutOfBoundsException
+     * if index is not in the list
+     */
+    public double getDouble(int i) throws IndexOutOfBoundsException {
+        if (i < 0 || i >= this.size) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        return data[i];
+    }
+
+    /**
+     * Set i-th element.
+     *
+     * @param i index of the element
+     *          from 0 to size-1
+     * @param e new value for the element
+     * @return the inserted element
+     * @throws IndexOutOfBoundsException
+     * if index is not in the list
+     */
+    public Double set(int i, Double e) throws IndexOutOfBoundsException {
+        setDouble(i, e);
+        return e;
+    }
+
+    /**
+     * Set i-th element without boxing.
+     *
+     * @param i index of the element
+     *          from 0 to size-1
+     * @param value new value for the element
+     * @throws IndexOutOfBoundsException
+     * if index is not in the list
+     */
+    public void setDouble(int i, double value) throws IndexOutOfBoundsException {
+        if (i < 0 || i >= this.size) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        data[i] = value;
+    }
+
+    /**
+     * Add new element at index i.
+     *
+     * @param i index of the element
+     *          from 0 to size
+     * @param e element to be added
+     * @throws IndexOutOfBoundsException
+     * if index is not in the list
+     */
+    public void add(int i, Double e) throws IndexOutOfBoundsException {
+        addDouble(i, e);
+    }
+
+    /**
+     * Add new element at index i without boxing.
+     * Elements after it are shifted by a single block copy.
+     *
+     * @param i index of the element
+     *          from 0 to size
+     * @param value element to be added
+     * @throws IndexOutOfBoundsException
+     * if index is not in the list
+     */
+    public void addDouble(int i, double value) throws IndexOutOfBoundsException {
+        if (i < 0 || i > this.size) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        ensureCapacity(this.size + 1);
+        System.arraycopy(this.data, i, this.data, i + 1, this.size - i);
+        this.data[i] = value;
+
+        this.size++;
+    }
+
+    /**
+     * Add new element at the end without boxing.
+     *
+     * @param value element to be added
+     */
+    public void addDouble(double value) {
+        ensureCapacity(this.size + 1);
+        this.data[this.size++] = value;
+    }
+
+    /**
+     * Add all elements of the collection starting at index i,
+     * keeping their order.
+     * Elements after i are shifted once by the size of the collection.
+     *
+     * @param i index of the first added element
+     *          from 0 to size
+     * @param c elements to be added
+     * @throws IndexOutOfBoundsException
+     * if index is not in the list
+     */
+    public void addAll(int i, Collection<? extends Double> c) throws IndexOutOfBoundsException {
+        if (i < 0 || i > this.size) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        int count = c.size();
+        if (count == 0) {
+            return;
+        }
+
+        // copy first: the collection may be this list
+        double[] added = new double[count];
+        Iterator<? extends Double> iterator = c.iterator();
+        for (int j = 0; j < count; j++) {
+            added[j] = iterator.next();
+        }
+
+        ensureCapacity(this.size + count);
+        System.arraycopy(this.data, i, this.data, i + count, this.size - i);
+        System.arraycopy(added, 0, this.data, i, count);
+
+        this.size += count;
+    }
+
+    /**
+     * Remove the element at index i.
+     *
+     * @param i index of the element
+     *          from 0 to size-1
+     * @return the removed element
+     * @throws IndexOutOfBoundsException
+     * if index is not in the list
+     */
+    public Double remove(int i) throws IndexOutOfBoundsException {
+        return removeDouble(i);
+    }
+
+    /**
+     * Remove the element at index i without boxing.
+     *
+     * @param i index of the element
+     *          from 0 to size-1
+     * @return the removed element
+     * @throws IndexOutOfBoundsException
+     * if index is not in the list
+     */
+    public double removeDouble(int i) throws IndexOutOfBoundsException {
+        if (i < 0 || i >= this.size) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        double removed = data[i];
+        System.arraycopy(this.data, i + 1, this.data, i, this.size - i - 1);
+        this.size--;
+
+        return removed;
+    }
+
+    /**
+     * Remove elements with indexes from from (inclusive) to to (exclusive).
+     * Elements after them are shifted by a single block copy.
+     *
+     * @param from index of the first removed element
+     * @param to index after the last removed element
+     * @throws IndexOutOfBoundsException
+     * if the range is not in the list
+     */
+    public void removeRange(int from, int to) throws IndexOutOfBoundsException {
+        if (from < 0 || to > this.size || from > to) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        System.arraycopy(this.data, to, this.data, from, this.size - to);
+        this.size -= to - from;
+    }
+
+    /**
+     * Make sure the list can hold minCapacity elements without growing.
+     * Capacity at least doubles, so adding elements one by one
+     * takes amortized constant time.
+     *
+     * @param minCapacity number of elements to be held
+     */
+    public void ensureCapacity(int minCapacity) {
+        if (minCapacity <= this.data.length) {
+            return;
+        }
+
+        int newCapacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(minCapacity, this.data.length * 2L));
+        this.data = Arrays.copyOf(this.data, newCapacity);
+    }
+
+    /**
+     * Reduce capacity of the list to its size.
+     */
+    public void trimToSize() {
+        if (this.data.length > this.size) {
+            this.data = Arrays.copyOf(this.data, this.size);
+        }
+    }
+
+    /**
+     * Change the size of the list removing elements with
+     * indexes less than newSize. New elements are zeros.
+     *
+     * @param newSize new size of the list
+     */
+    public void resize(int newSize) {
+        if (this.size < newSize) {
+            ensureCapacity(newSize);
+            Arrays.fill(this.data, this.size, newSize, 0);
+        }
+
+        this.size = newSize;
+    }
+
+    /**
+     * Returns sum of all elements.
+     *
+     * @return sum, 0 for empty list
+     */
+    public double sum() {
+        double sum = 0;
+
+        for (int i = 0; i < this.size; i++) {
+            sum += data[i];
+        }
+
+        return sum;
+    }
+
+    /**
+     * Returns the smallest element.
+     *
+     * @return minimum
+     * @throws NoSuchElementException if the list is empty
+     */
+    public double min() throws NoSuchElementException {
+        if (this.size == 0) {
+            throw new NoSuchElementException();
+        }
+
+        double min = data[0];
+        for (int i = 1; i < this.size; i++) {
+            min = Math.min(min, data[i]);
+        }
+
+        return min;
+    }
+
+    /**
+     * Returns the largest element.
+     *
+     * @return maximum
+     * @throws NoSuchElementException if the list is empty
+     */
+    public double max() throws NoSuchElementException {
+        if (this.size == 0) {
+            throw new NoSuchElementException();
+        }
+
+        double max = data[0];
+        for (int i = 1; i < this.size; i++) {
+            max = Math.max(max, data[i]);
+        }
+
+        return max;
+    }
+
+    /**
+     * Returns copy of the elements.
+     *
+     * @return array of elements
+     */
+    public double[] toArray() {
+        return Arrays.copyOf(this.data, this.size);
+    }
+
+    /**
+     * Returns an iterator over the elements of the list.
+     *
+     * @return an iterator
+     */
+    public Iterator<Double> iterator() {
+        return new DoubleArrayListIterator();
+    }
+
+    /**
+     * Returns a Spliterator reading the array directly,
+     * which splits into halves of the index range.
+     *
+     * @return spliterator over elements
+     */
+    @Override
+    public Spliterator.OfDouble spliterator() {
+        return Spliterators.spliterator(this.data, 0, this.size, Spliterator.ORDERED);
+    }
+
+    /**
+     * Returns a sequential stream of unboxed elements.
+     *
+     * @return stream of elements
+     */
+    public DoubleStream doubleStream() {
+        return StreamSupport.doubleStream(spliterator(), false);
+    }
+
+    /**
+     * Iterator over the list.
+     */
+    private class DoubleArrayListIterator implements Iterator<Double> {
+        private int nextIndex = 0;
+
+        /**
+         * Checks whether there are next elements in the list.
+         *
+         * @return true if there is element in the list, false otherwise
+         */
+        public boolean hasNext() {
+            return nextIndex < size;
+        }
+
+        /**
+         * Returns the next element in the list.
+         *
+         * @return the next element if it exists
+         * @throws NoSuchElementException if the element doesn't exist
+         */
+        public Double next() throws NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return data[nextIndex++];
+        }
+    }
+}
@@ -0,0 +1,537 @@
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable implementation of Map with minimal perfect hashing.
+ * Built once from another Map by the hash-and-displace (CHD) method:
+ * keys are split into buckets of about four, and for each bucket
+ * a seed is found which sends all its keys to free slots.
+ * A lookup reads the seed of the bucket and goes straight to the
+ * only slot the key can be in, so it always takes one probe.
+ * The table has exactly one slot per entry, keys and values are
+ * kept in two arrays and seeds take one int per bucket.
+ * Keys with equal hash codes cannot be separated by seeds; they
+ * are kept after the table and searched linearly, which is rare.
+ *
+ * @param <K> type of keys
+ * @param <V> type of values
+ */
+class FrozenHashMap<K, V> implements Map<K, V> {
+    ////////// PRIVATE FIELDS //////////
+    // average number of keys in a bucket
+    private static final int BUCKET_SIZE = 4;
+    // seeds tried for a bucket before its keys are moved after the table
+    private static final int MAX_SEED = 1 << 20;
+
+    private final Object[] keys;
+    private final Object[] values;
+    // seed of each bucket, or -(slot + 1) for a bucket of one key placed directly
+    private final int[] seeds;
+    // number of slots addressed by seeds, the rest are searched linearly
+    private final int tableSize;
+    private final int size;
+    private final Hasher.Strategy strategy;
+
+    ////////// PUBLIC METHODS //////////
+
+    /**
+     * Constructs FrozenHashMap with entries of the given Map.
+     *
+     * @param source map to be copied
+     */
+    FrozenHashMap(Map<? extends K, ? extends V> source) {
+        this(source, Hasher.STANDARD);
+    }
+
+    /**
+     * Constructs FrozenHashMap with entries of the given Map,
+     * hashing keys with given strategy.
+     *
+     * @param source map to be copied
+     * @param strategy strategy of hashing keys
+     * @throws IllegalArgumentException if strategy is null
+     */
+    FrozenHashMap(Map<? extends K, ? extends V> source, Hasher.Strategy strategy)
+            throws IllegalArgumentException {
+        if (strategy == null) {
+            throw new IllegalArgumentException("Hashing strategy must be provided.");
+        }
+
+        this.strategy = strategy;
+        size = source.size();
+
+        Object[] sourceKeys = new Object[size];
+        Object[] sourceValues = new Object[size];
+        int[] hashes = new int[size];
+        Iterator<? extends Entry<? extends K, ? extends V>> iterator = source.entrySet().iterator();
+        for (int i = 0; i < size; i++) {
+            Entry<? extends K, ? extends V> entry = iterator.next();
+            sourceKeys[i] = entry.key;
+            sourceValues[i] = entry.value;
+            hashes[i] = strategy.hash(entry.key);
+        }
+
+        seeds = new int[Math.max(1, (size + BUCKET_SIZE - 1) / BUCKET_SIZE)];
+        int[] placement = place(hashes);
+
+        int overflow = 0;
+        for (int slot : placement) {
+            if (slot < 0) {
+                overflow++;
+            }
+        }
+
+        tableSize = size - overflow;
+        keys = new Object[size];
+        values = new Object[size];
+        int next = tableSize;
+        for (int i = 0; i < size; i++) {
+            int slot = placement[i] >= 0 ? placement[i] : next++;
+            keys[slot] = sourceKeys[i];
+            values[slot] = sourceValues[i];
+        }
+    }
+
+    /**
+     * Return number of entries in the FrozenHashMap.
+     *
+     * @return size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check whether the FrozenHashMap is empty.
+     *
+     * @return empty or not
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get value with specified key.
+     *
+     * @param k key to be found
+     * @return element with given key or null if it doesn't exist
+     */
+    @SuppressWarnings("unchecked")
+    public V get(K k) {
+        int index = indexOf(k);
+        return index < 0 ? null : (V) values[index];
+    }
+
+    /**
+     * Check whether there is an entry with specified key.
+     * Unlike get, tells a key mapped to null from a missing one.
+     *
+     * @param k key to be found
+     * @return true if there is such key, false otherwise
+     */
+    @Override
+    public boolean containsKey(K k) {
+        return indexOf(k) >= 0;
+    }
+
+    /**
+     * FrozenHashMap can't be changed.
+     *
+     * @param k key
+     * @param v value
+     * @return nothing
+     * @throws UnsupportedOperationException always
+     */
+    public V put(K k, V v) throws UnsupportedOperationException {
+        throw new UnsupportedOperationException("FrozenHashMap can't be changed.");
+    }
+
+    /**
+     * FrozenHashMap can't be changed.
+     *
+     * @param k key
+     * @return nothing
+     * @throws UnsupportedOperationException always
+     */
+    public V remove(K k) throws UnsupportedOperationException {
+        throw new UnsupportedOperationException("FrozenHashMap can't be changed.");
+    }
+
+    /// VIEWS OF FROZENHASHMAP ///
+
+    /**
+     * Returns the set of entries of the FrozenHashMap.
+     *
+     * @return set of entries
+     */
+    public Set<Entry<K, V>> entrySet() {
+        return new Set<Entry<K, V>>() {
+            public int size() {
+                return size;
+            }
+
+            public boolean isEmpty() {
+                return size == 0;
+            }
+
+            @SuppressWarnings("unchecked")
+            public boolean contains(Object o) {
+                return containsKey((K) o);
+            }
+
+            public Iterator<Entry<K, V>> iterator() {
+                return new SlotIterator<Entry<K, V>>() {
+                    @SuppressWarnings("unchecked")
+                    Entry<K, V> at(int index) {
+                        return new Entry<>((K) keys[index], (V) values[index]);
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Returns the set of keys of the FrozenHashMap.
+     *
+     * @return set of keys
+     */
+    public Set<K> keySet() {
+        return new Set<K>() {
+            public int size() {
+                return size;
+            }
+
+            public boolean isEmpty() {
+                return size == 0;
+            }
+
+            @SuppressWarnings("unchecked")
+            public boolean contains(Object o) {
+                return containsKey((K) o);
+            }
+
+            public Iterator<K> iterator() {
+                return new SlotIterator<K>() {
+                    @SuppressWarnings("unchecked")
+                    K at(int index) {
+                        return (K) keys[index];
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Returns the collection of values in the FrozenHashMap.
+     *
+     * @return collection of values
+     */
+    public Collection<V> values() {
+        return new Collection<V>() {
+            public int size() {
+                return size;
+            }
+
+            public boolean isEmpty() {
+                return size == 0;
+            }
+
+            public Iterator<V> iterator() {
+                return new SlotIterator<V>() {
+                    @SuppressWarnings("unchecked")
+                    V at(int index) {
+                        return (V) values[index];
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Iterator over slots of the FrozenHashMap, all of them are full.
+     *
+     * @param <T> type of elements
+     */
+    private abstract class SlotIterator<T> implements Iterator<T> {
+        private int currentIndex;
+
+        /**
+         * Returns element kept in the slot.
+         *
+         * @param index index of the slot
+         * @return element of the slot
+         */
+        abstract T at(int index);
+
+        /**
+         * Checks whether there are next elements.
+         *
+         * @return true if there is element, false otherwise
+         */
+        public boolean hasNext() {
+            return currentIndex < size;
+        }
+
+        /**
+         * Returns the next element.
+         *
+         * @return the next element if it exists
+         * @throws NoSuchElementException if the element doesn't exist
+         */
+        public T next() throws NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return at(currentIndex++);
+        }
+    }
+
+    ////////// PRIVATE METHODS //////////
+
+    /**
+     * Finds the key: checks its slot of the table, then the keys
+     * placed after the table.
+     *
+     * @param k key to be found
+     * @return index of the key or -1 if there is no such key
+     */
+    private int indexOf(K k) {
+        if (size == 0) {
+            return -1;
+        }
+
+        int hash = strategy.hash(k);
+        if (tableSize > 0) {
+            int slot = slot(hash, seeds[bucket(hash, seeds.length)], tableSize);
+            Object key = keys[slot];
+            if (key == k || k.equals(key)) {
+                return slot;
+            }
+        }
+
+        for (int i = tableSize; i < size; i++) {
+            if (k.equals(keys[i])) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Finds seeds of all buckets.
+     * Buckets are handled from the largest to the smallest, since
+     * large ones are hard to place when the table is almost full.
+     * Buckets of one key take any free slot directly.
+     *
+     * @param hashes hash codes of the keys
+     * @return slot of each key, -1 for keys kept after the table
+     */
+    private int[] place(int[] hashes) {
+        int n = hashes.length;
+        int bucketCount = seeds.length;
+        int[] placement = new int[n];
+
+        // group keys by bucket
+        int[] start = new int[bucketCount + 1];
+        for (int hash : hashes) {
+            start[bucket(hash, bucketCount) + 1]++;
+        }
+        int maxBucket = 0;
+        for (int b = 0; b < bucketCount; b++) {
+            maxBucket = Math.max(maxBucket, start[b + 1]);
+            start[b + 1] += start[b];
+        }
+        int[] members = new int[n];
+        int[] fill = new int[bucketCount];
+        for (int i = 0; i < n; i++) {
+            int b = bucket(hashes[i], bucketCount);
+            members[start[b] + fill[b]++] = i;
+        }
+
+        // order buckets by size, largest first
+        int[] bySize = new int[maxBucket + 2];
+        for (int b = 0; b < bucketCount; b++) {
+            bySize[maxBucket - (start[b + 1] - start[b]) + 1]++;
+        }
+        for (int s = 0; s <= maxBucket; s++) {
+            bySize[s + 1] += bySize[s];
+        }
+        int[] order = new int[bucketCount];
+        for (int b = 0; b < bucketCount; b++) {
+            order[bySize[maxBucket - (start[b + 1] - start[b])]++] = b;
+        }
+
+        // keys with hash code of another key of the bucket go after the table
+        int overflow = 0;
+        for (int b = 0; b < bucketCount; b++) {
+            for (int i = start[b]; i < start[b + 1]; i++) {
+                placement[members[i]] = 0;
+                for (int j = start[b]; j < i; j++) {
+                    if (placement[members[j]] == 0 && hashes[members[j]] == hashes[members[i]]) {
+                        placement[members[i]] = -1;
+                        overflow++;
+                        break;
+                    }
+                }
+            }
+        }
+
+        int tableSlots = n - overflow;
+        boolean[] taken = new boolean[tableSlots];
+        int[] slots = new int[maxBucket];
+        int freeCursor = 0;
+        boolean failed = false;
+
+        for (int b : order) {
+            int count = 0;
+            for (int i = start[b]; i < start[b + 1]; i++) {
+                if (placement[members[i]] == 0) {
+                    members[start[b] + count++] = members[i];
+                }
+            }
+
+            if (count == 0) {
+                continue;
+            }
+
+            if (count == 1) {
+                while (taken[freeCursor]) {
+                    freeCursor++;
+                }
+                taken[freeCursor] = true;
+                seeds[b] = -(freeCursor + 1);
+                placement[members[start[b]]] = freeCursor;
+                continue;
+            }
+
+            int seed = findSeed(hashes, members, start[b], count, taken, slots, tableSlots);
+            if (seed < 0) {
+                failed = true;
+                break;
+            }
+
+            seeds[b] = seed;
+            for (int i = 0; i < count; i++) {
+                taken[slots[i]] = true;
+                placement[members[start[b] + i]] = slots[i];
+            }
+        }
+
+        if (failed) {
+            return placeAfterFailure(hashes);
+        }
+
+        return placement;
+    }
+
+    /**
+     * Finds seed sending keys of the bucket to distinct free slots.
+     *
+     * @param hashes hash codes of the keys
+     * @param members indices of keys grouped by bucket
+     * @param from position of the first key of the bucket in members
+     * @param count number of keys in the bucket
+     * @param taken which slots are occupied
+     * @param slots buffer receiving slots of the keys
+     * @param tableSlots number of slots in the table
+     * @return seed or -1 if it was not found
+     */
+    private static int findSeed(int[] hashes, int[] members, int from, int count,
+                                boolean[] taken, int[] slots, int tableSlots) {
+        for (int seed = 0; seed < MAX_SEED; seed++) {
+            boolean fits = true;
+
+            for (int i = 0; i < count && fits; i++) {
+                int slot = slot(hashes[members[from + i]], seed, tableSlots);
+                if (taken[slot]) {
+                    fits = false;
+                }
+                for (int j = 0; j < i && fits; j++) {
+                    if (slots[j] == slot) {
+                        fits = false;
+                    }
+                }
+                slots[i] = slot;
+            }
+
+            if (fits) {
+                return seed;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Fallback when some bucket has no fitting seed: every bucket
+     * is placed directly key by key. This only happens for keys
+     * with degenerate hash codes, lookups still take one probe
+     * for buckets of one key and linear search otherwise.
+     *
+     * @param hashes hash codes of the keys
+     * @return slot of each key, -1 for keys kept after the table
+     */
+    private int[] placeAfterFailure(int[] hashes) {
+        int n = hashes.length;
+        int[] placement = new int[n];
+        int[] count = new int[seeds.length];
+
+        for (int hash : hashes) {
+            count[bucket(hash, seeds.length)]++;
+        }
+
+        int tableSlots = 0;
+        for (int i = 0; i < n; i++) {
+            int b = bucket(hashes[i], seeds.length);
+            if (count[b] == 1) {
+                seeds[b] = -(tableSlots + 1);
+                placement[i] = tableSlots++;
+            }
+            else {
+                seeds[b] = -1;
+                placement[i] = -1;
+            }
+        }
+
+        return placement;
+    }
+
+    /**
+     * Returns bucket of the key.
+     *
+     * @param hash hash code of the key
+     * @param bucketCount number of buckets
+     * @return index of the bucket
+     */
+    private static int bucket(int hash, int bucketCount) {
+        return reduce(Hasher.xxHash(hash), bucketCount);
+    }
+
+    /**
+     * Returns slot of the key for the seed of its bucket.
+     *
+     * @param hash hash code of the key
+     * @param seed seed of the bucket or -(slot + 1)
+     * @param tableSlots number of slots in the table
+     * @return index of the slot
+     */
+    private static int slot(int hash, int seed, int tableSlots) {
+        if (seed < 0) {
+            return -seed - 1;
+        }
+
+        return reduce(Hasher.murmur3(hash + seed * 0x9E3779B9), tableSlots);
+    }
+
+    /**
+     * Maps mixed hash to [0, range) without division.
+     *
+     * @param mixed well mixed hash
+     * @param range size of the range
+     * @return index in the range
+     */
+    private static int reduce(int mixed, int range) {
+        return (int) (((mixed & 0xFFFFFFFFL) * range) >>> 32);
+    }
+}
@@ -1,8 +1,18 @@
+import java.util.Arrays;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * Implementation of Map with Hashes.
  * Uses Quadratic Probing.
+ * Keys and values are kept in parallel arrays indexed by slot,
+ * together with cached hash codes of the keys unless disabled:
+ * probing compares hash codes before calling equals and rebuilding
+ * the table never hashes keys again.
+ * Keys are hashed by Hasher.Strategy chosen for the instance.
  *
  * @param <K> type of keys
  * @param <V> type of values
@@ -11,22 +21,161 @@ class HashMap<K, V> implements Map<K, V> {
     ////////// PRIVATE FIELDS //////////
     private int size;
     private int capacity;
-    private ArrayList<Entry<K, V>> data;
-    private final Entry<K, V> dummy = new Entry<>(null, null);
-    // we put dummy if the element is deleted
+    private Object[] keys;
+    private Object[] values;
+    // hash codes of the keys, null if they are not cached
+    private int[] hashes;
+    private final Hasher.Strategy strategy;
+    private static final Object dummy = new Object();
+    // we put dummy as a key if the element is deleted
+    private int dummyCount;
     private final double maxLoadFactor = 0.75;
+    // share of dummy slots at which the table is rebuilt in place
+    private final double maxDummyFactor;
     private int maxProbingSequenceLength;
+    // probe histograms, see getMetrics; null until enableMetrics
+    private long[] hitHistogram;
+    private long[] missHistogram;
+    private int resizeCount;
+    private long resizeNanos;
+    // number of insertions, removals and rebuilds, lets compute and merge
+    // notice that the function they call changed the table
+    private int structuralChanges;
 
     ////////// PUBLIC METHODS //////////
 
     /**
      * Constructs empty HashMap.
+     * Hash codes of the keys are cached.
      */
     HashMap() {
+        this(true, 0.25, Hasher.STANDARD);
+    }
+
+    /**
+     * Constructs empty HashMap able to hold expectedSize entries
+     * without growing.
+     *
+     * Hash codes of the keys are cached.
+     *
+     * @param expectedSize number of entries to be put
+     * @throws IllegalArgumentException if expectedSize is negative
+     */
+    HashMap(int expectedSize) throws IllegalArgumentException {
+        this(expectedSize, true, 0.25, Hasher.STANDARD);
+    }
+
+    /**
+     * Constructs empty HashMap hashing keys with given strategy.
+     * Hash codes of the keys are cached.
+     *
+     * @param strategy strategy of hashing keys
+     */
+    HashMap(Hasher.Strategy strategy) {
+        this(true, 0.25, strategy);
+    }
+
+    /**
+     * Constructs empty HashMap.
+     * If hash codes are cached, probing compares them before
+     * calling equals and resize does not hash keys again,
+     * at the cost of 4 bytes per slot.
+     *
+     * @param cacheHashes whether to keep hash codes of the keys
+     */
+    HashMap(boolean cacheHashes) {
+        this(cacheHashes, 0.25, Hasher.STANDARD);
+    }
+
+    /**
+     * Constructs empty HashMap.
+     * When deleted slots take maxDummyFactor of the table,
+     * it is rebuilt with the same capacity to get rid of them.
+     *
+     * @param cacheHashes whether to keep hash codes of the keys
+     * @param maxDummyFactor share of deleted slots triggering the rebuild
+     * @throws IllegalArgumentException if maxDummyFactor is not in (0, 0.75]
+     */
+    HashMap(boolean cacheHashes, double maxDummyFactor) throws IllegalArgumentException {
+        this(cacheHashes, maxDummyFactor, Hasher.STANDARD);
+    }
+
+    /**
+     * Constructs empty HashMap.
+     * When deleted slots take maxDummyFactor of the table,
+     * it is rebuilt with the same capacity to get rid of them.
+     *
+     * @param cacheHashes whether to keep hash codes of the keys
+     * @param maxDummyFactor share of deleted slots triggering the rebuild
+     * @param strategy strategy of hashing keys
+     * @throws IllegalArgumentException if maxDummyFactor is not in (0, 0.75]
+     * or strategy is null
+     */
+    HashMap(boolean cacheHashes, double maxDummyFactor, Hasher.Strategy strategy)
+            throws IllegalArgumentException {
+        this(0, cacheHashes, maxDummyFactor, strategy);
+    }
+
+    /**
+     * Constructs empty HashMap able to hold expectedSize entries
+     * without growing.
+     * When deleted slots take maxDummyFactor of the table,
+     * it is rebuilt with the same capacity to get rid of them.
+     *
+     * @param expectedSize number of entries to be put
+     * @param cacheHashes whether to keep hash codes of the keys
+     * @param maxDummyFactor share of deleted slots triggering the rebuild
+     * @param strategy strategy of hashing keys
+     * @throws IllegalArgumentException if expectedSize is negative,
+     * maxDummyFactor is not in (0, 0.75] or strategy is null
+     */
+    HashMap(int expectedSize, boolean cacheHashes, double maxDummyFactor, Hasher.Strategy strategy)
+            throws IllegalArgumentException {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size must not be negative.");
+        }
+        if (!(maxDummyFactor > 0 && maxDummyFactor <= maxLoadFactor)) {
+            throw new IllegalArgumentException("Dummy factor must be in (0, " + maxLoadFactor + "].");
+        }
+        if (strategy == null) {
+            throw new IllegalArgumentException("Hashing strategy must be provided.");
+        }
+
+        this.maxDummyFactor = maxDummyFactor;
+        this.strategy = strategy;
         size = 0;
-        data = new ArrayList<>();
-        capacity = 16;
-        data.resize(capacity);
+        dummyCount = 0;
+        capacity = capacityFor(expectedSize);
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        hashes = cacheHashes ? new int[capacity] : null;
+        maxProbingSequenceLength = 0;
+    }
+
+    /**
+     * Constructs HashMap over slot arrays restored by HashMapSnapshot.
+     * Arrays are taken as they are, so the layout of the table
+     * is the one it was saved with; deleted slots are given by indices.
+     *
+     * @param keys keys by slot, null for empty slots
+     * @param values values by slot
+     * @param hashes hash codes by slot or null if they are not cached
+     * @param dummies indices of deleted slots
+     * @param size number of entries
+     * @param strategy strategy the keys were hashed with
+     */
+    HashMap(Object[] keys, Object[] values, int[] hashes, int[] dummies, int size, Hasher.Strategy strategy) {
+        this.maxDummyFactor = 0.25;
+        this.strategy = strategy;
+        this.size = size;
+        this.capacity = keys.length;
+        this.keys = keys;
+        this.values = values;
+        this.hashes = hashes;
+        for (int index : dummies) {
+            keys[index] = dummy;
+        }
+        dummyCount = dummies.length;
         maxProbingSequenceLength = 0;
     }
 
@@ -54,9 +203,22 @@ class HashMap<K, V> implements Map<K, V> {
      * @param k key to be found
      * @return element with given key or null if it doesn't exist
      */
+    @SuppressWarnings("unchecked")
     public V get(K k) {
-        int index = findPlace(k);
-        return (data.get(index) == null || data.get(index) == dummy) ? null : data.get(index).value;
+        int index = findPlace(k, strategy.hash(k));
+        return isFull(index) ? (V) values[index] : null;
+    }
+
+    /**
+     * Check whether there is an entry with specified key.
+     * Unlike get, tells a key mapped to null from a missing one.
+     *
+     * @param k key to be found
+     * @return true if there is such key, false otherwise
+     */
+    @Override
+    public boolean containsKey(K k) {
+        return isFull(findPlace(k, strategy.hash(k)));
     }
 
     /**
@@ -66,20 +228,18 @@ class HashMap<K, V> implements Map<K, V> {
      * @param v value
      * @return old value with specified key or null if it didn't exist
      */
+    @SuppressWarnings("unchecked")
     public V put(K k, V v) {
-        int index = findPlace(k);
-        V old = null;
+        int hash = strategy.hash(k);
+        int index = findPlace(k, hash);
 
-        if (data.get(index) == null || data.get(index) == dummy) {
-            data.set(index, new Entry<>(k, v));
-            size++;
-        }
-        else {
-            old = data.get(index).value;
-            data.get(index).value = v;
+        if (!isFull(index)) {
+            insertAt(index, k, v, hash);
+            return null;
         }
 
-        resize();
+        V old = (V) values[index];
+        values[index] = v;
 
         return old;
     }
@@ -91,19 +251,302 @@ class HashMap<K, V> implements Map<K, V> {
      * @param k key
      * @return the removed value or null
      */
+    @SuppressWarnings("unchecked")
     public V remove(K k) {
-        int index = findPlace(k);
-        V removed = null;
+        int index = findPlace(k, strategy.hash(k));
 
-        if (data.get(index) != null && data.get(index) != dummy) {
-            removed = data.get(index).value;
-            data.set(index, dummy);
-            size--;
+        if (!isFull(index)) {
+            return null;
         }
 
+        V removed = (V) values[index];
+        removeAt(index);
+
         return removed;
     }
 
+    /**
+     * Get value with specified key or the default one if there is no such key.
+     *
+     * @param k key to be found
+     * @param defaultValue value returned if the key doesn't exist
+     * @return element with given key or defaultValue
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(K k, V defaultValue) {
+        int index = findPlace(k, strategy.hash(k));
+        return isFull(index) && values[index] != null ? (V) values[index] : defaultValue;
+    }
+
+    /**
+     * Put element with specified key and value only if there is no such key.
+     * The slot is found once for both the check and the insertion.
+     *
+     * @param k key
+     * @param v value
+     * @return current value with specified key or null if it didn't exist
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V putIfAbsent(K k, V v) {
+        int hash = strategy.hash(k);
+        int index = findPlace(k, hash);
+
+        if (!isFull(index)) {
+            insertAt(index, k, v, hash);
+            return null;
+        }
+
+        if (values[index] == null) {
+            values[index] = v;
+            return null;
+        }
+
+        return (V) values[index];
+    }
+
+    /**
+     * Computes value for the key if there is no such key and puts it,
+     * unless the computed value is null.
+     * The slot is found once for both the check and the insertion.
+     *
+     * @param k key
+     * @param mapping function computing value from the key
+     * @return current or computed value, null if computed value is null
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V computeIfAbsent(K k, Function<? super K, ? extends V> mapping) {
+        int hash = strategy.hash(k);
+        int index = findPlace(k, hash);
+
+        if (isFull(index) && values[index] != null) {
+            return (V) values[index];
+        }
+
+        int changes = structuralChanges;
+        V computed = mapping.apply(k);
+        if (computed == null) {
+            return null;
+        }
+
+        index = refind(changes, index, k, hash);
+        if (isFull(index)) {
+            values[index] = computed;
+        }
+        else {
+            insertAt(index, k, computed, hash);
+        }
+
+        return computed;
+    }
+
+    /**
+     * Computes new value for the key from the key and its current value
+     * (null if there is no such key) and puts it.
+     * If the new value is null, the key is removed.
+     * The slot is found once and updated in place.
+     *
+     * @param k key
+     * @param remapping function computing new value
+     * @return new value
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V compute(K k, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        int hash = strategy.hash(k);
+        int index = findPlace(k, hash);
+
+        int changes = structuralChanges;
+        V computed = remapping.apply(k, isFull(index) ? (V) values[index] : null);
+
+        index = refind(changes, index, k, hash);
+        update(index, k, computed, hash);
+
+        return computed;
+    }
+
+    /**
+     * Puts the value if there is no such key, otherwise combines
+     * current value with the given one and puts the result.
+     * If the result is null, the key is removed.
+     * The slot is found once and updated in place.
+     *
+     * @param k key
+     * @param v value to be put or combined
+     * @param remapping function combining current and given values
+     * @return new value
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V merge(K k, V v, BiFunction<? super V, ? super V, ? extends V> remapping) {
+        int hash = strategy.hash(k);
+        int index = findPlace(k, hash);
+
+        V current = isFull(index) ? (V) values[index] : null;
+        if (current == null) {
+            update(index, k, v, hash);
+            return v;
+        }
+
+        int changes = structuralChanges;
+        V computed = remapping.apply(current, v);
+
+        index = refind(changes, index, k, hash);
+        update(index, k, computed, hash);
+
+        return computed;
+    }
+
+    /**
+     * Grows the table in advance, so that putting entries until
+     * there are expectedSize of them causes no more rebuilds.
+     *
+     * @param expectedSize number of entries to be held
+     */
+    public void ensureCapacity(int expectedSize) {
+        int newCapacity = capacityFor(expectedSize);
+
+        if (newCapacity > capacity) {
+            rehash(newCapacity);
+        }
+    }
+
+    /**
+     * Puts all entries of the given map.
+     * The table is grown once in advance instead of doubling
+     * several times while putting.
+     *
+     * @param m map whose entries are put
+     */
+    @SuppressWarnings("unchecked")
+    public void putAll(Map<? extends K, ? extends V> m) {
+        ensureCapacity(size + m.size());
+
+        if (m instanceof HashMap && ((HashMap<K, V>) m).strategy == strategy
+                && ((HashMap<K, V>) m).hashes != null) {
+            // cached hash codes of the other map are valid here as well
+            HashMap<K, V> other = (HashMap<K, V>) m;
+            for (int i = 0; i < other.capacity; i++) {
+                if (other.isFull(i)) {
+                    K key = (K) other.keys[i];
+                    int index = findPlace(key, other.hashes[i]);
+
+                    if (isFull(index)) {
+                        values[index] = other.values[i];
+                    }
+                    else {
+                        insertAt(index, key, (V) other.values[i], other.hashes[i]);
+                    }
+                }
+            }
+            return;
+        }
+
+        Iterator<? extends Entry<? extends K, ? extends V>> iterator = m.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Entry<? extends K, ? extends V> entry = iterator.next();
+            put(entry.key, entry.value);
+        }
+    }
+
+    /**
+     * Puts pairs of keys and values with the same indexes.
+     * The table is grown once in advance, then all keys are hashed,
+     * then all slots are found, so that independent memory accesses
+     * of different keys may overlap.
+     *
+     * @param ks keys
+     * @param vs values, vs[i] is put with ks[i]
+     * @throws IllegalArgumentException if arrays have different lengths
+     */
+    public void putAll(K[] ks, V[] vs) throws IllegalArgumentException {
+        if (ks.length != vs.length) {
+            throw new IllegalArgumentException("Keys and values must have the same length.");
+        }
+
+        ensureCapacity(size + ks.length);
+        int[] batchHashes = hashAll(ks);
+
+        for (int i = 0; i < ks.length; i++) {
+            int index = findPlace(ks[i], batchHashes[i]);
+
+            if (isFull(index)) {
+                values[index] = vs[i];
+            }
+            else {
+                insertAt(index, ks[i], vs[i], batchHashes[i]);
+            }
+        }
+    }
+
+    /**
+     * Gets values of all given keys.
+     * All keys are hashed first, then all slots are found.
+     *
+     * @param ks keys to be found
+     * @param result array receiving values, result[i] is the value of ks[i] or null
+     * @return the result array
+     * @throws IllegalArgumentException if result is shorter than ks
+     */
+    @SuppressWarnings("unchecked")
+    public V[] getAll(K[] ks, V[] result) throws IllegalArgumentException {
+        if (result.length < ks.length) {
+            throw new IllegalArgumentException("Result must have place for every key.");
+        }
+
+        int[] batchHashes = hashAll(ks);
+
+        for (int i = 0; i < ks.length; i++) {
+            int index = findPlace(ks[i], batchHashes[i]);
+            result[i] = isFull(index) ? (V) values[index] : null;
+        }
+
+        return result;
+    }
+
+    /**
+     * Removes all given keys.
+     * All keys are hashed first, then all slots are found.
+     *
+     * @param ks keys to be removed
+     * @return number of removed entries
+     */
+    public int removeAll(K[] ks) {
+        int[] batchHashes = hashAll(ks);
+        int removed = 0;
+
+        for (int i = 0; i < ks.length; i++) {
+            int index = findPlace(ks[i], batchHashes[i]);
+
+            if (isFull(index)) {
+                removeAt(index);
+                removed++;
+            }
+        }
+
+        return removed;
+    }
+
+    /**
+     * Rebuilds the table with the same capacity, dropping all
+     * deleted slots. Probing sequences of missing keys get
+     * shorter, since they stop at the first empty slot.
+     */
+    public void compact() {
+        rehash(capacity);
+    }
+
+    /**
+     * Return number of slots marked as deleted.
+     *
+     * @return number of deleted slots
+     */
+    public int getDummyCount() {
+        return dummyCount;
+    }
+
     /**
      * Return maximal probing sequence in HashMap.
      * Current state of the HashMap is considered, i.e.
@@ -116,6 +559,224 @@ class HashMap<K, V> implements Map<K, V> {
         return maxProbingSequenceLength;
     }
 
+    /**
+     * Returns immutable copy of the HashMap with minimal perfect hashing,
+     * see FrozenHashMap. Keys are hashed by the same strategy.
+     *
+     * @return frozen copy
+     */
+    public FrozenHashMap<K, V> freeze() {
+        return new FrozenHashMap<>(this, strategy);
+    }
+
+    /**
+     * Starts collecting probe histograms of lookups.
+     * They are off by default, so that lookups write nothing and
+     * the HashMap does not carry the histograms; once enabled, every
+     * lookup costs one counter increment.
+     */
+    public void enableMetrics() {
+        if (hitHistogram == null) {
+            hitHistogram = new long[HashMapMetrics.HISTOGRAM_SIZE];
+            missHistogram = new long[HashMapMetrics.HISTOGRAM_SIZE];
+        }
+    }
+
+    /**
+     * Returns snapshot of metrics of the HashMap: probe histograms
+     * of lookups, number of deleted slots, number and duration of
+     * table rebuilds and load factor.
+     * Histograms are empty unless enableMetrics was called; rebuilds
+     * are counted all the time, which costs two clock reads per rebuild.
+     *
+     * @return snapshot of metrics
+     */
+    public HashMapMetrics getMetrics() {
+        long[] hits = hitHistogram != null ? hitHistogram : new long[HashMapMetrics.HISTOGRAM_SIZE];
+        long[] misses = missHistogram != null ? missHistogram : new long[HashMapMetrics.HISTOGRAM_SIZE];
+
+        return new HashMapMetrics(hits, misses, size, capacity, dummyCount, resizeCount, resizeNanos);
+    }
+
+    /**
+     * Clears probe histograms and rebuild counters.
+     */
+    public void resetMetrics() {
+        if (hitHistogram != null) {
+            Arrays.fill(hitHistogram, 0);
+            Arrays.fill(missHistogram, 0);
+        }
+        resizeCount = 0;
+        resizeNanos = 0;
+    }
+
+    /**
+     * Puts entry whose key is surely not in the map yet, for HashMapBuilder.
+     * Keys are not compared: the first empty slot of the probing
+     * sequence is taken.
+     *
+     * @param k key
+     * @param v value
+     * @param hash hash code of the key by the strategy of the map
+     */
+    void putNew(K k, V v, int hash) {
+        insertAt(findEmpty(hash), k, v, hash);
+    }
+
+    /**
+     * Puts entry whose key is surely not in the map yet, for HashMapBuilder,
+     * if its probing sequence meets an empty slot before leaving the range
+     * of slots. Only the taken slot is written, so threads may fill
+     * disjoint ranges at once; size is updated afterwards by addPlaced.
+     *
+     * @param k key
+     * @param v value
+     * @param hash hash code of the key by the strategy of the map
+     * @param from first slot of the range
+     * @param to slot after the last one
+     * @return number of probes before the taken slot or -1 if the sequence left the range
+     */
+    int putNewInRange(K k, V v, int hash, int from, int to) {
+        int index = compress(hash);
+
+        int jump = 1;
+        while (index >= from && index < to) {
+            if (keys[index] == null) {
+                keys[index] = k;
+                values[index] = v;
+                if (hashes != null) {
+                    hashes[index] = hash;
+                }
+                return jump - 1;
+            }
+
+            index = compress(index + jump);
+            jump++;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Counts entries placed by putNewInRange, for HashMapBuilder.
+     *
+     * @param count number of placed entries
+     * @param longestProbe largest number of probes made for one of them
+     */
+    void addPlaced(int count, int longestProbe) {
+        size += count;
+        structuralChanges += count;
+        maxProbingSequenceLength = Math.max(maxProbingSequenceLength, longestProbe);
+    }
+
+    /**
+     * Get value with specified key writing nothing to the map,
+     * for ConcurrentHashMap: neither probing statistics nor metrics
+     * are recorded, so any number of threads may look up at once.
+     * The arrays are read once and indices are bounded by their own
+     * lengths, so a lookup racing with a writer may return a wrong
+     * value but never fails; the caller must validate the result.
+     *
+     * @param k key to be found
+     * @return element with given key or null if it doesn't exist
+     */
+    @SuppressWarnings("unchecked")
+    V peek(K k) {
+        Object[] tableKeys = keys;
+        Object[] tableValues = values;
+        int[] tableHashes = hashes;
+        if (tableValues.length != tableKeys.length) {
+            return null;
+        }
+
+        int index = peekIndex(tableKeys, tableHashes, k);
+        return index < 0 ? null : (V) tableValues[index];
+    }
+
+    /**
+     * Check whether there is an entry with specified key writing
+     * nothing to the map, same as peek.
+     *
+     * @param k key to be found
+     * @return true if there is such key, false otherwise
+     */
+    boolean peekContains(K k) {
+        return peekIndex(keys, hashes, k) >= 0;
+    }
+
+    /**
+     * Returns number of slots of the table, for HashMapSnapshot.
+     *
+     * @return capacity
+     */
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns state of the slot, for HashMapSnapshot.
+     *
+     * @param index index of the slot
+     * @return 0 if the slot is empty, 1 if full, 2 if deleted
+     */
+    int getSlotState(int index) {
+        if (keys[index] == null) {
+            return 0;
+        }
+
+        return keys[index] == dummy ? 2 : 1;
+    }
+
+    /**
+     * Returns key of the full slot, for HashMapSnapshot.
+     *
+     * @param index index of the slot
+     * @return key
+     */
+    @SuppressWarnings("unchecked")
+    K getKeyAt(int index) {
+        return (K) keys[index];
+    }
+
+    /**
+     * Returns value of the full slot, for HashMapSnapshot.
+     *
+     * @param index index of the slot
+     * @return value
+     */
+    @SuppressWarnings("unchecked")
+    V getValueAt(int index) {
+        return (V) values[index];
+    }
+
+    /**
+     * Returns hash code of the key of the full slot, for HashMapSnapshot.
+     *
+     * @param index index of the slot
+     * @return cached or calculated hash code
+     */
+    int getHashAt(int index) {
+        return hashes != null ? hashes[index] : strategy.hash(keys[index]);
+    }
+
+    /**
+     * Returns whether hash codes of the keys are cached, for HashMapSnapshot.
+     *
+     * @return true if hash codes are cached
+     */
+    boolean isCachingHashes() {
+        return hashes != null;
+    }
+
+    /**
+     * Returns strategy of hashing keys, for HashMapSnapshot.
+     *
+     * @return strategy
+     */
+    Hasher.Strategy getStrategy() {
+        return strategy;
+    }
+
     /// VIEWS OF HASHMAP ///
 
     /**
@@ -170,6 +831,20 @@ class HashMap<K, V> implements Map<K, V> {
             return new EntryIterator(hashMap);
         }
 
+        /**
+         * Returns a Spliterator over elements of the set,
+         * which splits ranges of slots.
+         *
+         * @return spliterator over elements
+         */
+        public Spliterator<Entry<K, V>> spliterator() {
+            return new SlotSpliterator<Entry<K, V>>(0, -1, Spliterator.DISTINCT | Spliterator.NONNULL) {
+                Entry<K, V> at(int index) {
+                    return new Entry<>((K) keys[index], (V) values[index]);
+                }
+            };
+        }
+
         /**
          * Checks whether the element is in the set.
          *
@@ -177,12 +852,14 @@ class HashMap<K, V> implements Map<K, V> {
          * @return true if contains, false otherwise
          */
         public boolean contains(Object o) {
-            return get((K) o) != null;
+            return containsKey((K) o);
         }
     }
 
     /**
      * Iterator over the entries of HashMap.
+     * Entries are created on the fly from the slot arrays,
+     * so changing them does not affect the HashMap.
      */
     private class EntryIterator implements Iterator<Entry<K, V>> {
         final private HashMap<K, V> hashMap;
@@ -204,16 +881,14 @@ class HashMap<K, V> implements Map<K, V> {
          * @return true if there is entry in the HashMap, false otherwise
          */
         public boolean hasNext() {
-            Entry<K, V> found = null;
             while (currentIndex < hashMap.capacity) {
-                if (hashMap.data.get(currentIndex) != null && hashMap.data.get(currentIndex) != dummy) {
-                    found = hashMap.data.get(currentIndex);
-                    break;
+                if (hashMap.isFull(currentIndex)) {
+                    return true;
                 }
                 currentIndex++;
             }
 
-            return found != null;
+            return false;
         }
 
         /**
@@ -222,12 +897,14 @@ class HashMap<K, V> implements Map<K, V> {
          * @return the next entry if it exists
          * @throws NoSuchElementException if the element doesn't exist
          */
+        @SuppressWarnings("unchecked")
         public Entry<K, V> next() throws NoSuchElementException {
             if (!hasNext()) {
                 throw new NoSuchElementException();
             }
 
-            return hashMap.data.get(currentIndex++);
+            int index = currentIndex++;
+            return new Entry<>((K) hashMap.keys[index], (V) hashMap.values[index]);
         }
     }
 
@@ -283,6 +960,20 @@ class HashMap<K, V> implements Map<K, V> {
             return new KeyIterator(data);
         }
 
+        /**
+         * Returns a Spliterator over elements of the set,
+         * which splits ranges of slots.
+         *
+         * @return spliterator over elements
+         */
+        public Spliterator<K> spliterator() {
+            return new SlotSpliterator<K>(0, -1, Spliterator.DISTINCT | Spliterator.NONNULL) {
+                K at(int index) {
+                    return (K) keys[index];
+                }
+            };
+        }
+
         /**
          * Checks whether the element is in the set.
          *
@@ -290,7 +981,7 @@ class HashMap<K, V> implements Map<K, V> {
          * @return true if contains, false otherwise
          */
         public boolean contains(Object o) {
-            return data.contains(o);
+            return containsKey((K) o);
         }
     }
 
@@ -381,6 +1072,20 @@ class HashMap<K, V> implements Map<K, V> {
         public Iterator<V> iterator() {
             return new ValueIterator(data);
         }
+
+        /**
+         * Returns a Spliterator over elements of the collection,
+         * which splits ranges of slots.
+         *
+         * @return spliterator over elements
+         */
+        public Spliterator<V> spliterator() {
+            return new SlotSpliterator<V>(0, -1, 0) {
+                V at(int index) {
+                    return (V) values[index];
+                }
+            };
+        }
     }
 
     /**
@@ -419,83 +1124,436 @@ class HashMap<K, V> implements Map<K, V> {
         }
     }
 
+    /**
+     * Spliterator over a range of slots of HashMap.
+     * Splitting halves the range, so every part can be traversed
+     * by its own thread. The slot arrays are taken when traversal
+     * starts; the HashMap must not be changed during traversal.
+     *
+     * @param <T> type of elements
+     */
+    private abstract class SlotSpliterator<T> implements Spliterator<T> {
+        private Object[] tableKeys;
+        private int index;
+        private int fence;
+        private final int characteristics;
+
+        /**
+         * Constructs spliterator over slots from origin inclusive to fence exclusive.
+         *
+         * @param origin first slot
+         * @param fence slot after the last one, -1 for the end of the table
+         * @param characteristics characteristics of elements
+         */
+        private SlotSpliterator(int origin, int fence, int characteristics) {
+            index = origin;
+            this.fence = fence;
+            this.characteristics = characteristics;
+        }
+
+        /**
+         * Returns element kept in the full slot.
+         *
+         * @param index index of the slot
+         * @return element of the slot
+         */
+        abstract T at(int index);
+
+        /**
+         * Performs the action on the next element if it exists.
+         *
+         * @param action action to be performed
+         * @return false if there were no elements left, true otherwise
+         */
+        public boolean tryAdvance(Consumer<? super T> action) {
+            bind();
+
+            while (index < fence) {
+                int current = index++;
+                Object key = tableKeys[current];
+                if (key != null && key != dummy) {
+                    action.accept(at(current));
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        /**
+         * Performs the action on all remaining elements.
+         *
+         * @param action action to be performed
+         */
+        public void forEachRemaining(Consumer<? super T> action) {
+            bind();
+
+            Object[] currentKeys = tableKeys;
+            int end = fence;
+            for (int i = index; i < end; i++) {
+                Object key = currentKeys[i];
+                if (key != null && key != dummy) {
+                    action.accept(at(i));
+                }
+            }
+            index = end;
+        }
+
+        /**
+         * Splits off the first half of remaining slots.
+         *
+         * @return spliterator over the first half or null if the range is too small
+         */
+        public Spliterator<T> trySplit() {
+            bind();
+
+            int middle = (index + fence) >>> 1;
+            if (middle <= index) {
+                return null;
+            }
+
+            final SlotSpliterator<T> outer = this;
+            SlotSpliterator<T> prefix = new SlotSpliterator<T>(index, middle, characteristics) {
+                T at(int index) {
+                    return outer.at(index);
+                }
+            };
+            prefix.tableKeys = tableKeys;
+            index = middle;
+
+            return prefix;
+        }
+
+        /**
+         * Estimates number of remaining elements from the share of remaining slots.
+         *
+         * @return estimated number of elements
+         */
+        public long estimateSize() {
+            bind();
+            return (long) size * (fence - index) / tableKeys.length;
+        }
+
+        /**
+         * Returns characteristics of elements.
+         *
+         * @return characteristics
+         */
+        public int characteristics() {
+            return characteristics;
+        }
+
+        /**
+         * Takes the current table of the HashMap on the first use.
+         */
+        private void bind() {
+            if (tableKeys == null) {
+                tableKeys = keys;
+                if (fence < 0) {
+                    fence = tableKeys.length;
+                }
+            }
+        }
+    }
+
     ////////// PRIVATE METHODS //////////
 
+    /**
+     * Checks whether the slot holds an entry.
+     *
+     * @param index index of the slot
+     * @return true if the slot is neither empty nor deleted
+     */
+    private boolean isFull(int index) {
+        return keys[index] != null && keys[index] != dummy;
+    }
+
+    /**
+     * Calculates the smallest capacity holding expectedSize
+     * entries below the maximal load factor.
+     *
+     * @param expectedSize number of entries
+     * @return power of two, at least 16
+     */
+    private int capacityFor(int expectedSize) {
+        int result = 16;
+
+        while (result * maxLoadFactor <= expectedSize && result < (1 << 30)) {
+            result *= 2;
+        }
+
+        return result;
+    }
+
+    /**
+     * Hashes all keys of a batch.
+     *
+     * @param ks keys
+     * @return hash codes, i-th is the hash of ks[i]
+     */
+    private int[] hashAll(K[] ks) {
+        int[] result = new int[ks.length];
+
+        for (int i = 0; i < ks.length; i++) {
+            result[i] = strategy.hash(ks[i]);
+        }
+
+        return result;
+    }
+
+    /**
+     * Puts new entry into the slot found for its key
+     * and grows the table if needed.
+     *
+     * @param index index of empty or deleted slot
+     * @param k key
+     * @param v value
+     * @param hash hash code of the key
+     */
+    private void insertAt(int index, K k, V v, int hash) {
+        if (keys[index] == dummy) {
+            dummyCount--;
+        }
+        keys[index] = k;
+        values[index] = v;
+        if (hashes != null) {
+            hashes[index] = hash;
+        }
+        size++;
+        structuralChanges++;
+
+        resize();
+    }
+
+    /**
+     * Marks the full slot as deleted and rebuilds the table
+     * if there are too many deleted slots.
+     *
+     * @param index index of full slot
+     */
+    private void removeAt(int index) {
+        keys[index] = dummy;
+        values[index] = null;
+        dummyCount++;
+        size--;
+        structuralChanges++;
+
+        if (dummyCount >= maxDummyFactor * capacity) {
+            rehash(capacity);
+        }
+    }
+
+    /**
+     * Sets value of the key in the slot found for it:
+     * puts, replaces or, if the value is null, removes the entry.
+     *
+     * @param index index of the slot found for the key
+     * @param k key
+     * @param v new value or null
+     * @param hash hash code of the key
+     */
+    private void update(int index, K k, V v, int hash) {
+        if (isFull(index)) {
+            if (v != null) {
+                values[index] = v;
+            }
+            else {
+                removeAt(index);
+            }
+        }
+        else if (v != null) {
+            insertAt(index, k, v, hash);
+        }
+    }
+
+    /**
+     * Returns the slot found before calling a user function, or finds
+     * it again if the function added or removed entries.
+     *
+     * @param changes value of structuralChanges when the slot was found
+     * @param index index of the slot
+     * @param k key
+     * @param hash hash code of the key
+     * @return index of the slot for the key in current table
+     */
+    private int refind(int changes, int index, K k, int hash) {
+        if (changes == structuralChanges) {
+            return index;
+        }
+
+        return findPlace(k, hash);
+    }
+
+    /**
+     * Finds the key in given arrays of the table without recording
+     * anything, see peek.
+     *
+     * @param tableKeys keys of the table
+     * @param tableHashes cached hash codes of the table or null
+     * @param key key to be found
+     * @return index of the key or -1 if there is no such key
+     */
+    private int peekIndex(Object[] tableKeys, int[] tableHashes, K key) {
+        if (tableHashes != null && tableHashes.length != tableKeys.length) {
+            return -1;
+        }
+
+        int mask = tableKeys.length - 1;
+        int hash = strategy.hash(key);
+        int index = hash & mask;
+        for (int jump = 1; jump <= tableKeys.length; jump++) {
+            Object current = tableKeys[index];
+
+            if (current == null) {
+                return -1;
+            }
+
+            if (current != dummy && (tableHashes == null || tableHashes[index] == hash)
+                    && (current == key || current.equals(key))) {
+                return index;
+            }
+
+            index = (index + jump) & mask;
+        }
+
+        return -1;
+    }
+
     /**
      * Compresses hashcode so that it can be used as index.
+     * Capacity is always a power of two, so lowest bits are
+     * taken with a mask instead of dividing.
      *
      * @param hash hash value of the key
      * @return truncated hash
      */
     private int compress(int hash) {
-        return Math.abs(hash % capacity);
+        return hash & (capacity - 1);
     }
 
     /**
      * Finds entry with specified key.
      * Assumes quadratic probing implemented.
+     * If hash codes are cached, slots with different hash
+     * are skipped without calling equals.
+     * If the key is missing, the first deleted slot on the way
+     * is returned, so that put can reuse it.
      *
      * @param key key to be searched
-     * @return entry with specified key or null if it doesn't exist
+     * @param hash hash code of the key
+     * @return index of the slot with specified key or where it should be placed
      */
-    private int findPlace(K key) {
-        int index = compress(Hasher.getHashCode(key));
+    private int findPlace(K key, int hash) {
+        int index = compress(hash);
+        int dummyIndex = -1;
 
-        int jump = 1;
         // online counting of probes
         int probesCount = 0;
-        while (true) {
-            if (data.get(index) == null) {
-                maxProbingSequenceLength = Math.max(maxProbingSequenceLength, probesCount);
-                return index;
+        // Steps grow by one each time, i.e. offsets from the initial
+        // index are triangular numbers, which stays quadratic and
+        // visits every slot when capacity is a power of two.
+        for (int jump = 1; jump <= capacity; jump++) {
+            Object current = keys[index];
+
+            if (current == null) {
+                break;
             }
 
-            if (jump > capacity && data.get(index) == dummy) {
+            if (current == dummy) {
+                if (dummyIndex < 0) {
+                    dummyIndex = index;
+                }
+            }
+            else if ((hashes == null || hashes[index] == hash) && (current == key || current.equals(key))) {
                 maxProbingSequenceLength = Math.max(maxProbingSequenceLength, probesCount);
+                if (hitHistogram != null) {
+                    hitHistogram[Math.min(probesCount, HashMapMetrics.HISTOGRAM_SIZE - 1)]++;
+                }
                 return index;
             }
 
-            if (data.get(index) != dummy) {
-                if (data.get(index).key.equals(key)) {
-                    maxProbingSequenceLength = Math.max(maxProbingSequenceLength, probesCount);
-                    return index;
-                }
-            }
+            index = compress(index + jump);
+            probesCount++;
+        }
+
+        maxProbingSequenceLength = Math.max(maxProbingSequenceLength, probesCount);
+        if (missHistogram != null) {
+            missHistogram[Math.min(probesCount, HashMapMetrics.HISTOGRAM_SIZE - 1)]++;
+        }
+        return dummyIndex < 0 ? index : dummyIndex;
+    }
 
-            // This method showed to have better performance than
-            // index = compress(initialIndex + jump^2)
-            // while keeping to be quadratic.
-            index = compress(index + jump*jump);
+    /**
+     * Finds empty slot for a key which is surely not in the table.
+     * Used while rebuilding, when the new table has no deleted slots,
+     * so keys are not compared and lookups are not counted.
+     *
+     * @param hash hash code of the key
+     * @return index of empty slot
+     */
+    private int findEmpty(int hash) {
+        int index = compress(hash);
+
+        int jump = 1;
+        while (keys[index] != null) {
+            index = compress(index + jump);
             jump++;
-            probesCount++;
         }
+
+        maxProbingSequenceLength = Math.max(maxProbingSequenceLength, jump - 1);
+        return index;
     }
 
     /**
      * Increases size of the HashMap if loadFactor is too high.
      * This increases speed of access and preserve from overflow.
+     * Deleted slots are counted in the load as well, since they
+     * lengthen probing sequences; if most of the load is made
+     * of them, the table is rebuilt with the same capacity.
      */
     private void resize() {
-        double loadFactor = size * 1.0 / capacity;
+        double loadFactor = (size + dummyCount) * 1.0 / capacity;
 
         if (loadFactor < maxLoadFactor) {
             return;
         }
 
-        ArrayList<Entry<K, V>> oldData = data;
-        data = new ArrayList<>();
-        capacity *= 2;
-        data.resize(capacity);
-        int oldSize = size;
+        rehash(size * 2.0 / capacity >= maxLoadFactor ? capacity * 2 : capacity);
+    }
+
+    /**
+     * Moves all entries to a new table of given capacity.
+     *
+     * @param newCapacity capacity of the new table
+     */
+    @SuppressWarnings("unchecked")
+    private void rehash(int newCapacity) {
+        long start = System.nanoTime();
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        int[] oldHashes = hashes;
+        capacity = newCapacity;
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        hashes = oldHashes != null ? new int[capacity] : null;
+        dummyCount = 0;
         maxProbingSequenceLength = 0;
 
-        for (int i = 0; i < oldData.size(); i++) {
-            if (oldData.get(i) != null && oldData.get(i) != dummy) {
-                Entry<K, V> element = oldData.get(i);
-                put(element.key, element.value);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null && oldKeys[i] != dummy) {
+                K key = (K) oldKeys[i];
+                int hash = oldHashes != null ? oldHashes[i] : strategy.hash(key);
+                int index = findEmpty(hash);
+                keys[index] = key;
+                values[index] = oldValues[i];
+                if (hashes != null) {
+                    hashes[index] = hash;
+                }
             }
         }
 
-        size = oldSize;
+        structuralChanges++;
+        resizeCount++;
+        resizeNanos += System.nanoTime() - start;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,362 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Builds large HashMaps from arrays of keys and values in parallel.
+ * Work is done by fork/join tasks in four steps:
+ * all keys are hashed; keys are split into partitions by the highest
+ * bits of their home slots in the table, keeping input order; duplicates
+ * are removed inside each partition independently (equal keys always
+ * fall into the same partition, the last value wins as with put);
+ * every partition fills its own region of a table presized for all
+ * remaining entries, using the hash codes computed in the first step,
+ * without hashing or comparing keys again and without resizing.
+ * Entries whose probing sequence leaves their region before finding
+ * an empty slot are put afterwards by a single thread.
+ */
+class HashMapBuilder {
+    ////////// PRIVATE FIELDS //////////
+    // ranges of keys hashed or scattered by a single task
+    private static final int CHUNK_SIZE = 1 << 16;
+    // load factor HashMap is presized with, see capacityFor
+    private static final double MAX_LOAD_FACTOR = 0.75;
+
+    ////////// PUBLIC METHODS //////////
+
+    /**
+     * Builds HashMap with standard hashing in the common fork/join pool.
+     *
+     * @param ks keys
+     * @param vs values, vs[i] is put with ks[i]
+     * @param <K> type of keys
+     * @param <V> type of values
+     * @return built map
+     * @throws IllegalArgumentException if arrays have different lengths
+     */
+    static <K, V> HashMap<K, V> build(K[] ks, V[] vs) throws IllegalArgumentException {
+        return build(ks, vs, Hasher.STANDARD, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Builds HashMap hashing keys with given strategy in the given pool.
+     * The map holds the same entries as if all pairs were put in order
+     * into an empty HashMap with cached hash codes.
+     *
+     * @param ks keys
+     * @param vs values, vs[i] is put with ks[i]
+     * @param strategy strategy of hashing keys
+     * @param pool pool running the tasks
+     * @param <K> type of keys
+     * @param <V> type of values
+     * @return built map
+     * @throws IllegalArgumentException if arrays have different lengths or strategy is null
+     */
+    static <K, V> HashMap<K, V> build(final K[] ks, final V[] vs, final Hasher.Strategy strategy,
+                                      ForkJoinPool pool) throws IllegalArgumentException {
+        if (ks.length != vs.length) {
+            throw new IllegalArgumentException("Keys and values must have the same length.");
+        }
+        if (strategy == null) {
+            throw new IllegalArgumentException("Hashing strategy must be provided.");
+        }
+
+        final int n = ks.length;
+        final int[] hashes = new int[n];
+        pool.invoke(new RangeAction(0, n) {
+            void compute(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    hashes[i] = strategy.hash(ks[i]);
+                }
+            }
+        });
+
+        int bits = 0;
+        while ((1 << bits) < pool.getParallelism() * 4 && (n >> bits) > CHUNK_SIZE) {
+            bits++;
+        }
+
+        // the table holds at most n entries; with fewer distinct keys
+        // it is smaller and the entries are partitioned once more
+        int capacity = capacityFor(n);
+        final int[][] partitions = partition(hashes, null, capacity, bits, pool);
+
+        final int[][] unique = new int[partitions.length][];
+        pool.invoke(new RangeAction(0, partitions.length, 1) {
+            void compute(int from, int to) {
+                for (int p = from; p < to; p++) {
+                    unique[p] = deduplicate(ks, hashes, partitions[p]);
+                }
+            }
+        });
+
+        int total = 0;
+        for (int[] part : unique) {
+            total += part.length;
+        }
+
+        final HashMap<K, V> map = new HashMap<>(total, true, 0.25, strategy);
+        int regionBits = Math.min(bits, Integer.numberOfTrailingZeros(map.getCapacity()));
+        final int[][] regions = map.getCapacity() == capacity
+                ? unique : partition(hashes, unique, map.getCapacity(), regionBits, pool);
+        final int regionSize = map.getCapacity() >>> regionBits;
+
+        // entries left for the single thread, counts of placed ones
+        // and longest probing sequences, by region
+        final int[][] deferred = new int[regions.length][];
+        final int[] placed = new int[regions.length];
+        final int[] longestProbes = new int[regions.length];
+        pool.invoke(new RangeAction(0, regions.length, 1) {
+            void compute(int from, int to) {
+                for (int p = from; p < to; p++) {
+                    int start = p * regionSize;
+                    int[] left = new int[regions[p].length];
+                    int leftCount = 0;
+
+                    for (int i : regions[p]) {
+                        int probes = map.putNewInRange(ks[i], vs[i], hashes[i], start, start + regionSize);
+                        if (probes < 0) {
+                            left[leftCount++] = i;
+                        }
+                        else {
+                            longestProbes[p] = Math.max(longestProbes[p], probes);
+                        }
+                    }
+
+                    placed[p] = regions[p].length - leftCount;
+                    deferred[p] = leftCount == left.length ? left : Arrays.copyOf(left, leftCount);
+                }
+            }
+        });
+
+        for (int p = 0; p < regions.length; p++) {
+            map.addPlaced(placed[p], longestProbes[p]);
+        }
+        for (int[] part : deferred) {
+            for (int i : part) {
+                map.putNew(ks[i], vs[i], hashes[i]);
+            }
+        }
+
+        return map;
+    }
+
+    ////////// PRIVATE METHODS //////////
+
+    /**
+     * Calculates capacity HashMap is presized with for expectedSize entries.
+     * A wrong result costs one more partitioning pass, never correctness.
+     *
+     * @param expectedSize number of entries
+     * @return power of two, at least 16
+     */
+    private static int capacityFor(int expectedSize) {
+        int result = 16;
+
+        while (result * MAX_LOAD_FACTOR <= expectedSize && result < (1 << 30)) {
+            result *= 2;
+        }
+
+        return result;
+    }
+
+    /**
+     * Splits indices of keys into 2^bits partitions by the highest bits
+     * of their home slots in a table of given capacity, i.e. every
+     * partition holds keys of one region of the table.
+     * Every source counts and then scatters its keys in parallel,
+     * so indices stay in the order of the sources.
+     *
+     * @param hashes hash codes of the keys
+     * @param sources indices of keys to split, or null to split all keys
+     *                in chunks of CHUNK_SIZE
+     * @param capacity capacity of the table, a power of two
+     * @param bits number of bits choosing a partition
+     * @param pool pool running the tasks
+     * @return indices of keys of every partition
+     */
+    private static int[][] partition(final int[] hashes, final int[][] sources, int capacity, final int bits,
+                                     ForkJoinPool pool) {
+        final int partitionCount = 1 << bits;
+        final int chunkCount = sources != null ? sources.length : (hashes.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        final int mask = capacity - 1;
+        final int shift = Integer.numberOfTrailingZeros(capacity) - bits;
+        // counts, and then positions, of every partition in every chunk
+        final int[][] positions = new int[chunkCount][partitionCount];
+
+        pool.invoke(new RangeAction(0, chunkCount, 1) {
+            void compute(int from, int to) {
+                for (int c = from; c < to; c++) {
+                    int length = chunkLength(hashes, sources, c);
+                    for (int j = 0; j < length; j++) {
+                        int i = sources != null ? sources[c][j] : c * CHUNK_SIZE + j;
+                        positions[c][(hashes[i] & mask) >>> shift]++;
+                    }
+                }
+            }
+        });
+
+        final int[][] partitions = new int[partitionCount][];
+        for (int p = 0; p < partitionCount; p++) {
+            int position = 0;
+            for (int c = 0; c < chunkCount; c++) {
+                int count = positions[c][p];
+                positions[c][p] = position;
+                position += count;
+            }
+            partitions[p] = new int[position];
+        }
+
+        pool.invoke(new RangeAction(0, chunkCount, 1) {
+            void compute(int from, int to) {
+                for (int c = from; c < to; c++) {
+                    int length = chunkLength(hashes, sources, c);
+                    for (int j = 0; j < length; j++) {
+                        int i = sources != null ? sources[c][j] : c * CHUNK_SIZE + j;
+                        int p = (hashes[i] & mask) >>> shift;
+                        partitions[p][positions[c][p]++] = i;
+                    }
+                }
+            }
+        });
+
+        return partitions;
+    }
+
+    /**
+     * Returns number of keys in the chunk being partitioned.
+     *
+     * @param hashes hash codes of all keys
+     * @param sources indices of keys by chunk, or null for chunks of CHUNK_SIZE
+     * @param c index of the chunk
+     * @return length of the chunk
+     */
+    private static int chunkLength(int[] hashes, int[][] sources, int c) {
+        if (sources != null) {
+            return sources[c].length;
+        }
+
+        return Math.min(hashes.length, (c + 1) * CHUNK_SIZE) - c * CHUNK_SIZE;
+    }
+
+    /**
+     * Removes indices of repeated keys, keeping the last one of each key
+     * in the place of the first one.
+     * Uses a table of indices with linear probing.
+     *
+     * @param ks all keys
+     * @param hashes hash codes of all keys
+     * @param indices indices of keys of the partition in input order
+     * @return indices of distinct keys
+     */
+    private static int[] deduplicate(Object[] ks, int[] hashes, int[] indices) {
+        int capacity = 16;
+        while (capacity < indices.length * 2) {
+            capacity *= 2;
+        }
+
+        // position in result plus one, 0 is an empty slot
+        int[] table = new int[capacity];
+        int[] result = new int[indices.length];
+        int count = 0;
+
+        for (int i : indices) {
+            int hash = hashes[i];
+            int slot = Hasher.xxHash(hash) & (capacity - 1);
+
+            while (true) {
+                int position = table[slot] - 1;
+
+                if (position < 0) {
+                    table[slot] = count + 1;
+                    result[count++] = i;
+                    break;
+                }
+
+                int other = result[position];
+                if (hashes[other] == hash && (ks[other] == ks[i] || ks[other].equals(ks[i]))) {
+                    result[position] = i;
+                    break;
+                }
+
+                slot = (slot + 1) & (capacity - 1);
+            }
+        }
+
+        if (count == result.length) {
+            return result;
+        }
+
+        int[] trimmed = new int[count];
+        System.arraycopy(result, 0, trimmed, 0, count);
+        return trimmed;
+    }
+
+    /**
+     * Task doing work over a range of indices, split in halves
+     * until ranges are small enough.
+     * Tasks are never serialized, RecursiveAction is merely Serializable.
+     */
+    private abstract static class RangeAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        // largest range done without splitting
+        private final int threshold;
+
+        /**
+         * Constructs task over the range of keys.
+         *
+         * @param from first index
+         * @param to index after the last one
+         */
+        RangeAction(int from, int to) {
+            this(from, to, CHUNK_SIZE);
+        }
+
+        /**
+         * Constructs task over the range.
+         *
+         * @param from first index
+         * @param to index after the last one
+         * @param threshold largest range done without splitting
+         */
+        RangeAction(int from, int to, int threshold) {
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        /**
+         * Does the work for the range.
+         *
+         * @param from first index
+         * @param to index after the last one
+         */
+        abstract void compute(int from, int to);
+
+        /**
+         * Splits the range or does the work.
+         */
+        @Override
+        protected void compute() {
+            if (to - from <= threshold) {
+                compute(from, to);
+                return;
+            }
+
+            final RangeAction outer = this;
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeAction(from, middle, threshold) {
+                void compute(int from, int to) {
+                    outer.compute(from, to);
+                }
+            }, new RangeAction(middle, to, threshold) {
+                void compute(int from, int to) {
+                    outer.compute(from, to);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Snapshot of operational metrics of a HashMap.
+ * Probe histograms hold number of lookups by the number of
+ * probes they took; the last bucket also counts all longer ones.
+ */
+class HashMapMetrics {
+    /**
+     * Number of buckets in probe histograms.
+     */
+    static final int HISTOGRAM_SIZE = 32;
+
+    private final long[] hitHistogram;
+    private final long[] missHistogram;
+    private final int size;
+    private final int capacity;
+    private final int dummyCount;
+    private final int resizeCount;
+    private final long resizeNanos;
+
+    /**
+     * Constructs snapshot of metrics.
+     * Histograms are copied, so the snapshot does not change
+     * together with the HashMap.
+     *
+     * @param hitHistogram probes of lookups that found the key
+     * @param missHistogram probes of lookups that did not find the key
+     * @param size number of entries
+     * @param capacity number of slots
+     * @param dummyCount number of deleted slots
+     * @param resizeCount number of table rebuilds
+     * @param resizeNanos time spent rebuilding the table, in nanoseconds
+     */
+    HashMapMetrics(long[] hitHistogram, long[] missHistogram, int size, int capacity,
+                   int dummyCount, int resizeCount, long resizeNanos) {
+        this.hitHistogram = hitHistogram.clone();
+        this.missHistogram = missHistogram.clone();
+        this.size = size;
+        this.capacity = capacity;
+        this.dummyCount = dummyCount;
+        this.resizeCount = resizeCount;
+        this.resizeNanos = resizeNanos;
+    }
+
+    /**
+     * Returns histogram of probes of lookups that found the key.
+     *
+     * @return copy of the histogram, i-th element is number of lookups with i probes
+     */
+    public long[] getHitHistogram() {
+        return hitHistogram.clone();
+    }
+
+    /**
+     * Returns histogram of probes of lookups that did not find the key.
+     *
+     * @return copy of the histogram, i-th element is number of lookups with i probes
+     */
+    public long[] getMissHistogram() {
+        return missHistogram.clone();
+    }
+
+    /**
+     * Returns average number of probes of lookups that found the key.
+     *
+     * @return mean probes or 0 if there were no such lookups
+     */
+    public double getMeanHitProbes() {
+        return mean(hitHistogram);
+    }
+
+    /**
+     * Returns average number of probes of lookups that did not find the key.
+     *
+     * @return mean probes or 0 if there were no such lookups
+     */
+    public double getMeanMissProbes() {
+        return mean(missHistogram);
+    }
+
+    /**
+     * Returns number of slots marked as deleted.
+     *
+     * @return number of deleted slots
+     */
+    public int getDummyCount() {
+        return dummyCount;
+    }
+
+    /**
+     * Returns number of table rebuilds, both growing and in place.
+     *
+     * @return number of rebuilds
+     */
+    public int getResizeCount() {
+        return resizeCount;
+    }
+
+    /**
+     * Returns total time spent rebuilding the table.
+     *
+     * @return time in nanoseconds
+     */
+    public long getResizeNanos() {
+        return resizeNanos;
+    }
+
+    /**
+     * Returns share of slots holding entries.
+     *
+     * @return load factor
+     */
+    public double getLoadFactor() {
+        return size * 1.0 / capacity;
+    }
+
+    /**
+     * Returns metrics as a single line of text.
+     *
+     * @return text representation
+     */
+    @Override
+    public String toString() {
+        return "size=" + size + " capacity=" + capacity + " loadFactor=" + getLoadFactor()
+                + " dummies=" + dummyCount + " resizes=" + resizeCount + " resizeNanos=" + resizeNanos
+                + " meanHitProbes=" + getMeanHitProbes() + " meanMissProbes=" + getMeanMissProbes();
+    }
+
+    /**
+     * Calculates mean of the histogram.
+     *
+     * @param histogram number of lookups by probes
+     * @return mean probes or 0 if histogram is empty
+     */
+    private static double mean(long[] histogram) {
+        long count = 0;
+        long total = 0;
+
+        for (int i = 0; i < histogram.length; i++) {
+            count += histogram[i];
+            total += i * histogram[i];
+        }
+
+        return count == 0 ? 0 : total * 1.0 / count;
+    }
+}
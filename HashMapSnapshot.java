@@ -0,0 +1,372 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of HashMap which restores the table as it was.
+ * Every entry is saved with its slot and hash code, so loading puts
+ * it straight into its slot: no hashing, probing or equals is needed.
+ * The file is read through memory mapping.
+ *
+ * The file is written next to the target under a temporary name and
+ * moved over it atomically, so an interrupted write never leaves a
+ * partial snapshot; the body is also protected by a CRC32 checksum.
+ *
+ * Layout of the table depends on hash codes of the keys, so keys must
+ * hash the same way in every process (String, Integer, Long and other
+ * types with value-based hashCode), and the map must be loaded with
+ * the same Hasher.Strategy; the strategy is checked on a probe value.
+ *
+ * File layout: 64-byte header, then a record per full slot
+ * (record length, slot, hash code, key, value), then indices of
+ * deleted slots.
+ */
+class HashMapSnapshot {
+    /**
+     * Writes and reads values of some type.
+     *
+     * @param <T> type of values
+     */
+    interface Codec<T> {
+        /**
+         * Writes the value.
+         *
+         * @param value value to be written
+         * @param out output to write to
+         * @throws IOException if writing fails
+         */
+        void write(T value, DataOutput out) throws IOException;
+
+        /**
+         * Reads the value written by write from the current position of the buffer.
+         *
+         * @param buffer buffer to read from
+         * @return read value
+         */
+        T read(ByteBuffer buffer);
+    }
+
+    /**
+     * Codec of strings as UTF-8 bytes prefixed by their number.
+     */
+    static final Codec<String> STRING = new Codec<String>() {
+        public void write(String value, DataOutput out) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        public String read(ByteBuffer buffer) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    /**
+     * Codec of integers as 4 bytes.
+     */
+    static final Codec<Integer> INTEGER = new Codec<Integer>() {
+        public void write(Integer value, DataOutput out) throws IOException {
+            out.writeInt(value);
+        }
+
+        public Integer read(ByteBuffer buffer) {
+            return buffer.getInt();
+        }
+    };
+
+    /**
+     * Codec of longs as 8 bytes.
+     */
+    static final Codec<Long> LONG = new Codec<Long>() {
+        public void write(Long value, DataOutput out) throws IOException {
+            out.writeLong(value);
+        }
+
+        public Long read(ByteBuffer buffer) {
+            return buffer.getLong();
+        }
+    };
+
+    ////////// PRIVATE FIELDS //////////
+    private static final int MAGIC = 0x484D5348;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    // record length, slot and hash code
+    private static final int RECORD_HEADER_SIZE = 12;
+    // largest part of the file mapped at once
+    private static final long WINDOW_SIZE = 1L << 30;
+    // hashed by the strategy to check that the snapshot is loaded with the same one
+    private static final String PROBE = "HashMapSnapshot";
+
+    ////////// PUBLIC METHODS //////////
+
+    /**
+     * Writes snapshot of the HashMap to the file, replacing it atomically.
+     *
+     * @param map map to be saved
+     * @param file target file
+     * @param keyCodec codec of keys
+     * @param valueCodec codec of values, which must accept null if the map has null values
+     * @param <K> type of keys
+     * @param <V> type of values
+     * @throws IOException if writing fails; the target file is left untouched then
+     */
+    static <K, V> void write(HashMap<K, V> map, Path file, Codec<? super K> keyCodec,
+                             Codec<? super V> valueCodec) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        Path tmp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        long bodyLength = 0;
+        int dummyCount = 0;
+
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                channel.position(HEADER_SIZE);
+                OutputStream stream = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+                DataOutputStream out = new DataOutputStream(stream);
+
+                ByteArrayOutputStream record = new ByteArrayOutputStream();
+                DataOutputStream recordOut = new DataOutputStream(record);
+                int capacity = map.getCapacity();
+
+                for (int i = 0; i < capacity; i++) {
+                    int state = map.getSlotState(i);
+                    if (state == 2) {
+                        dummyCount++;
+                    }
+                    if (state != 1) {
+                        continue;
+                    }
+
+                    record.reset();
+                    recordOut.writeInt(0);
+                    recordOut.writeInt(i);
+                    recordOut.writeInt(map.getHashAt(i));
+                    keyCodec.write(map.getKeyAt(i), recordOut);
+                    valueCodec.write(map.getValueAt(i), recordOut);
+                    recordOut.flush();
+
+                    byte[] bytes = record.toByteArray();
+                    int length = bytes.length - RECORD_HEADER_SIZE;
+                    bytes[0] = (byte) (length >>> 24);
+                    bytes[1] = (byte) (length >>> 16);
+                    bytes[2] = (byte) (length >>> 8);
+                    bytes[3] = (byte) length;
+
+                    out.write(bytes);
+                    crc.update(bytes, 0, bytes.length);
+                    bodyLength += bytes.length;
+                }
+
+                byte[] index = new byte[4];
+                for (int i = 0; i < capacity; i++) {
+                    if (map.getSlotState(i) == 2) {
+                        index[0] = (byte) (i >>> 24);
+                        index[1] = (byte) (i >>> 16);
+                        index[2] = (byte) (i >>> 8);
+                        index[3] = (byte) i;
+                        out.write(index);
+                        crc.update(index, 0, 4);
+                        bodyLength += 4;
+                    }
+                }
+                out.flush();
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(0, MAGIC);
+                header.putInt(4, VERSION);
+                header.putInt(8, capacity);
+                header.putInt(12, map.size());
+                header.putInt(16, dummyCount);
+                header.putInt(20, map.isCachingHashes() ? 1 : 0);
+                header.putInt(24, map.getStrategy().hash(PROBE));
+                header.putLong(32, bodyLength);
+                header.putLong(40, crc.getValue());
+                channel.write(header, 0);
+                channel.force(true);
+            }
+
+            Files.move(tmp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Loads HashMap saved by write.
+     * Entries are put straight into the slots they were saved in.
+     *
+     * @param file snapshot file
+     * @param keyCodec codec of keys
+     * @param valueCodec codec of values
+     * @param strategy strategy the map was hashed with
+     * @param <K> type of keys
+     * @param <V> type of values
+     * @return loaded map
+     * @throws IOException if reading fails, the file is not a snapshot,
+     * it is corrupted or was saved with another strategy
+     */
+    static <K, V> HashMap<K, V> read(Path file, Codec<? extends K> keyCodec, Codec<? extends V> valueCodec,
+                                     Hasher.Strategy strategy) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException("File does not hold HashMapSnapshot.");
+            }
+
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("File does not hold HashMapSnapshot.");
+            }
+
+            int capacity = header.getInt(8);
+            int size = header.getInt(12);
+            int dummyCount = header.getInt(16);
+            boolean cachedHashes = header.getInt(20) == 1;
+            long bodyLength = header.getLong(32);
+            long checksum = header.getLong(40);
+
+            if (header.getInt(24) != strategy.hash(PROBE)) {
+                throw new IOException("Snapshot was saved with another hashing strategy.");
+            }
+            if (capacity < 1 || Integer.bitCount(capacity) != 1 || size < 0 || dummyCount < 0
+                    || size + (long) dummyCount > capacity || bodyLength != fileSize - HEADER_SIZE) {
+                throw new IOException("Snapshot is corrupted or incomplete.");
+            }
+
+            Object[] keys = new Object[capacity];
+            Object[] values = new Object[capacity];
+            int[] hashes = cachedHashes ? new int[capacity] : null;
+            int[] dummies = new int[dummyCount];
+            Window window = new Window(channel, HEADER_SIZE);
+
+            try {
+                for (int i = 0; i < size; i++) {
+                    ByteBuffer buffer = window.ensure(RECORD_HEADER_SIZE);
+                    int length = buffer.getInt();
+                    int index = buffer.getInt();
+                    int hash = buffer.getInt();
+                    if (length < 0 || index < 0 || index >= capacity || keys[index] != null) {
+                        throw new IOException("Snapshot is corrupted.");
+                    }
+
+                    buffer = window.ensure(length);
+                    int end = buffer.position() + length;
+                    keys[index] = keyCodec.read(buffer);
+                    values[index] = valueCodec.read(buffer);
+                    if (buffer.position() != end || keys[index] == null) {
+                        throw new IOException("Snapshot is corrupted.");
+                    }
+                    if (hashes != null) {
+                        hashes[index] = hash;
+                    }
+                }
+
+                for (int i = 0; i < dummyCount; i++) {
+                    ByteBuffer buffer = window.ensure(4);
+                    int index = buffer.getInt();
+                    if (index < 0 || index >= capacity || keys[index] != null) {
+                        throw new IOException("Snapshot is corrupted.");
+                    }
+                    dummies[i] = index;
+                }
+                window.checksum();
+            } catch (RuntimeException e) {
+                throw new IOException("Snapshot is corrupted.", e);
+            }
+
+            if (window.crc.getValue() != checksum) {
+                throw new IOException("Snapshot checksum does not match.");
+            }
+
+            return new HashMap<>(keys, values, hashes, dummies, size, strategy);
+        }
+    }
+
+    ////////// PRIVATE METHODS //////////
+
+    /**
+     * Sequential reader of a file mapping it part by part,
+     * since a single mapping is limited to 2 GiB.
+     * Calculates checksum of the read bytes, a mapped part at a time.
+     */
+    private static class Window {
+        private final FileChannel channel;
+        private final long fileSize;
+        // position of the mapped part in the file
+        private long offset;
+        private ByteBuffer buffer;
+        // checksum of bytes before the current position
+        final CRC32 crc = new CRC32();
+
+        /**
+         * Constructs reader starting at the position.
+         *
+         * @param channel channel of the file
+         * @param position position to start from
+         * @throws IOException if mapping fails
+         */
+        Window(FileChannel channel, long position) throws IOException {
+            this.channel = channel;
+            this.fileSize = channel.size();
+            map(position);
+        }
+
+        /**
+         * Makes sure the next bytes are mapped.
+         *
+         * @param bytes number of bytes to be read next
+         * @return buffer positioned at the next byte
+         * @throws IOException if the file ends earlier or mapping fails
+         */
+        ByteBuffer ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                long position = offset + buffer.position();
+                if (fileSize - position < bytes) {
+                    throw new IOException("Snapshot is incomplete.");
+                }
+                checksum();
+                map(position);
+            }
+
+            return buffer;
+        }
+
+        /**
+         * Adds bytes of the mapped part read so far to the checksum.
+         * Must be called once the last byte is read.
+         */
+        void checksum() {
+            ByteBuffer part = buffer.duplicate();
+            part.flip();
+            crc.update(part);
+        }
+
+        /**
+         * Maps the part of the file starting at the position.
+         *
+         * @param position position in the file
+         * @throws IOException if mapping fails
+         */
+        private void map(long position) throws IOException {
+            offset = position;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(WINDOW_SIZE, fileSize - position));
+        }
+    }
+}
@@ -0,0 +1,326 @@
+import java.util.NoSuchElementException;
+
+/**
+ * Implementation of Set with Hashes.
+ * Uses Quadratic Probing, same as HashMap, but keeps elements
+ * directly in a flat table without values, together with their
+ * cached hash codes.
+ *
+ * @param <E> type of elements
+ */
+class HashSet<E> implements Set<E> {
+    ////////// PRIVATE FIELDS //////////
+    private int size;
+    private int capacity;
+    private Object[] elements;
+    // hash codes of the elements
+    private int[] hashes;
+    private static final Object dummy = new Object();
+    // we put dummy as an element if it is deleted
+    private int dummyCount;
+    private final double maxLoadFactor = 0.75;
+    // share of dummy slots at which the table is rebuilt in place
+    private final double maxDummyFactor = 0.25;
+
+    ////////// PUBLIC METHODS //////////
+
+    /**
+     * Constructs empty HashSet.
+     */
+    HashSet() {
+        this(0);
+    }
+
+    /**
+     * Constructs empty HashSet able to hold expectedSize elements
+     * without growing.
+     *
+     * @param expectedSize number of elements to be added
+     * @throws IllegalArgumentException if expectedSize is negative
+     */
+    HashSet(int expectedSize) throws IllegalArgumentException {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size must not be negative.");
+        }
+
+        size = 0;
+        dummyCount = 0;
+        capacity = 16;
+        while (capacity * maxLoadFactor <= expectedSize && capacity < (1 << 30)) {
+            capacity *= 2;
+        }
+        elements = new Object[capacity];
+        hashes = new int[capacity];
+    }
+
+    /**
+     * Return number of elements in the HashSet.
+     *
+     * @return size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check whether the HashSet is empty.
+     *
+     * @return empty or not
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns true if the set contains specified element.
+     *
+     * @param o object to be checked
+     * @return true if there is such element in the set, false otherwise.
+     */
+    public boolean contains(Object o) {
+        return isFull(findPlace(o, Hasher.getHashCode(o)));
+    }
+
+    /**
+     * Adds the element if it is not in the set yet.
+     *
+     * @param e element to be added
+     * @return true if the element was added, false if it was already there
+     */
+    public boolean add(E e) {
+        int hash = Hasher.getHashCode(e);
+        int index = findPlace(e, hash);
+
+        if (isFull(index)) {
+            return false;
+        }
+
+        if (elements[index] == dummy) {
+            dummyCount--;
+        }
+        elements[index] = e;
+        hashes[index] = hash;
+        size++;
+
+        resize();
+        return true;
+    }
+
+    /**
+     * Removes the element if it is in the set.
+     *
+     * @param o element to be removed
+     * @return true if the element was removed, false if it wasn't there
+     */
+    public boolean remove(Object o) {
+        int index = findPlace(o, Hasher.getHashCode(o));
+
+        if (!isFull(index)) {
+            return false;
+        }
+
+        elements[index] = dummy;
+        dummyCount++;
+        size--;
+
+        if (dummyCount >= maxDummyFactor * capacity) {
+            rehash(capacity);
+        }
+        return true;
+    }
+
+    /**
+     * Adds all elements of the collection (union).
+     * The table is grown once beforehand for the sets being disjoint.
+     *
+     * @param c collection of elements to be added
+     * @return number of added elements
+     */
+    public int addAll(Collection<? extends E> c) {
+        ensureCapacity(size + c.size());
+
+        int added = 0;
+        Iterator<? extends E> iterator = c.iterator();
+        while (iterator.hasNext()) {
+            if (add(iterator.next())) {
+                added++;
+            }
+        }
+
+        return added;
+    }
+
+    /**
+     * Keeps only elements which are also in the given set (intersection).
+     * Elements are removed in a single pass and the table is rebuilt once.
+     *
+     * @param other set of elements to be kept
+     * @return number of removed elements
+     */
+    public int retainAll(Set<?> other) {
+        int removed = 0;
+
+        for (int i = 0; i < capacity; i++) {
+            if (isFull(i) && !other.contains(elements[i])) {
+                elements[i] = dummy;
+                removed++;
+            }
+        }
+
+        if (removed > 0) {
+            size -= removed;
+            dummyCount += removed;
+            rehash(capacity);
+        }
+
+        return removed;
+    }
+
+    /**
+     * Grows the table once so that expectedSize elements fit
+     * without further resizing.
+     *
+     * @param expectedSize number of elements to be held
+     */
+    public void ensureCapacity(int expectedSize) {
+        int newCapacity = capacity;
+        while (newCapacity * maxLoadFactor <= expectedSize && newCapacity < (1 << 30)) {
+            newCapacity *= 2;
+        }
+
+        if (newCapacity > capacity) {
+            rehash(newCapacity);
+        }
+    }
+
+    /**
+     * Returns an iterator over the elements of the set.
+     *
+     * @return iterator over elements
+     */
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int currentIndex = 0;
+
+            public boolean hasNext() {
+                while (currentIndex < capacity) {
+                    if (isFull(currentIndex)) {
+                        return true;
+                    }
+                    currentIndex++;
+                }
+
+                return false;
+            }
+
+            @SuppressWarnings("unchecked")
+            public E next() throws NoSuchElementException {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                return (E) elements[currentIndex++];
+            }
+        };
+    }
+
+    ////////// PRIVATE METHODS //////////
+
+    /**
+     * Checks whether the slot holds an element.
+     *
+     * @param index index of the slot
+     * @return true if the slot is neither empty nor deleted
+     */
+    private boolean isFull(int index) {
+        return elements[index] != null && elements[index] != dummy;
+    }
+
+    /**
+     * Compresses hash code to the index of the table.
+     *
+     * @param hash hash code
+     * @return index of the slot
+     */
+    private int compress(int hash) {
+        return hash & (capacity - 1);
+    }
+
+    /**
+     * Finds the slot with the element, or the slot to put it into:
+     * the first deleted slot on the way or the empty one the search stopped at.
+     *
+     * @param o element to be found
+     * @param hash hash code of the element
+     * @return index of the slot
+     */
+    private int findPlace(Object o, int hash) {
+        int index = compress(hash);
+        int dummyIndex = -1;
+
+        // offsets from the initial index are triangular numbers
+        for (int jump = 1; jump <= capacity; jump++) {
+            Object current = elements[index];
+
+            if (current == null) {
+                break;
+            }
+
+            if (current == dummy) {
+                if (dummyIndex < 0) {
+                    dummyIndex = index;
+                }
+            }
+            else if (hashes[index] == hash && (current == o || current.equals(o))) {
+                return index;
+            }
+
+            index = compress(index + jump);
+        }
+
+        return dummyIndex < 0 ? index : dummyIndex;
+    }
+
+    /**
+     * Increases size of the HashSet if loadFactor is too high,
+     * deleted slots included.
+     */
+    private void resize() {
+        double loadFactor = (size + dummyCount) * 1.0 / capacity;
+
+        if (loadFactor < maxLoadFactor) {
+            return;
+        }
+
+        rehash(size * 2.0 / capacity >= maxLoadFactor ? capacity * 2 : capacity);
+    }
+
+    /**
+     * Puts all elements into a new table of given capacity
+     * using cached hash codes.
+     *
+     * @param newCapacity capacity of the new table
+     */
+    private void rehash(int newCapacity) {
+        Object[] oldElements = elements;
+        int[] oldHashes = hashes;
+        capacity = newCapacity;
+        elements = new Object[capacity];
+        hashes = new int[capacity];
+        dummyCount = 0;
+
+        for (int i = 0; i < oldElements.length; i++) {
+            if (oldElements[i] != null && oldElements[i] != dummy) {
+                int index = compress(oldHashes[i]);
+                int jump = 1;
+                while (elements[index] != null) {
+                    index = compress(index + jump);
+                    jump++;
+                }
+
+                elements[index] = oldElements[i];
+                hashes[index] = oldHashes[i];
+            }
+        }
+    }
+}
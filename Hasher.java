@@ -2,6 +2,39 @@
  * Class hashing several types of data.
  */
 class Hasher {
+    /**
+     * Strategy of hashing objects, chosen per hash table.
+     */
+    interface Strategy {
+        /**
+         * Calculates hash code of an element.
+         *
+         * @param el element to be hashed
+         * @return hash code
+         */
+        int hash(Object el);
+    }
+
+    /**
+     * Hashes with getHashCode as is.
+     * Sequential integers get sequential hash codes.
+     */
+    static final Strategy STANDARD = Hasher::getHashCode;
+
+    /**
+     * Hashes with getHashCode followed by the Murmur3 finalizer,
+     * so every bit of the result depends on every bit of the input.
+     */
+    static final Strategy MURMUR3 = el -> murmur3(getHashCode(el));
+
+    /**
+     * Hashes with getHashCode followed by the xxHash32 finalizer.
+     */
+    static final Strategy XXHASH = el -> xxHash(getHashCode(el));
+
+    // added before mixing in getHashCode64, so that zero input does not give zero hash
+    private static final long SEED64 = 0x9E3779B97F4A7C15L;
+
     /**
      * Calculates hash code of an element.
      * Calls explicitly defined function for several types and
@@ -33,6 +66,115 @@ class Hasher {
         return el;
     }
 
+    /**
+     * Hashes primitive int without boxing.
+     * Just returns its value, same as for Integer.
+     *
+     * @param el int for hashing
+     * @return hash code of the element
+     */
+    static int getHashCode(int el) {
+        return el;
+    }
+
+    /**
+     * Hashes primitive long without boxing.
+     * Folds upper half onto the lower one, so both halves
+     * take part in the hash.
+     *
+     * @param el long for hashing
+     * @return hash code of the element
+     */
+    static int getHashCode(long el) {
+        return (int) (el ^ (el >>> 32));
+    }
+
+    /**
+     * Calculates 64-bit hash code of an element.
+     * Needed where 32 bits are not enough to tell elements apart,
+     * e.g. for sketches counting billions of distinct elements.
+     * Strings, byte arrays and whole numbers are hashed to 64 bits
+     * directly; for other types the 32-bit hashCode is mixed, so
+     * collisions of hashCode remain collisions.
+     *
+     * @param el element to be hashed
+     * @param <T> type of the element
+     * @return 64-bit hash code
+     */
+    static <T> long getHashCode64(T el) {
+        if (el instanceof String) {
+            String string = (String) el;
+            long hash = 0;
+
+            for (int i = 0; i < string.length(); i++) {
+                hash = 79 * hash + string.charAt(i) + 1;
+            }
+
+            return mix64(hash + SEED64);
+        }
+        else if (el instanceof byte[]) {
+            long hash = 0;
+
+            for (byte b : (byte[]) el) {
+                hash = 257 * hash + (b & 0xFF) + 1;
+            }
+
+            return mix64(hash + SEED64);
+        }
+        else if (el instanceof Long || el instanceof Integer) {
+            return mix64(((Number) el).longValue() + SEED64);
+        }
+
+        return mix64(el.hashCode() + SEED64);
+    }
+
+    /**
+     * Mixes bits of a 64-bit hash code with the finalizer of Murmur3 (fmix64).
+     *
+     * @param hash hash code to be mixed
+     * @return mixed hash code
+     */
+    static long mix64(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Mixes bits of a hash code with the finalizer of Murmur3.
+     * Spreads sequential values over all bits, which matters
+     * when only lowest bits are used as an index.
+     *
+     * @param hash hash code to be mixed
+     * @return mixed hash code
+     */
+    static int murmur3(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    /**
+     * Mixes bits of a hash code with the avalanche step of xxHash32.
+     *
+     * @param hash hash code to be mixed
+     * @return mixed hash code
+     */
+    static int xxHash(int hash) {
+        hash ^= hash >>> 15;
+        hash *= 0x85EBCA77;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE3D;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
     /**
      * Hashes string.
      * Assumes average text - both lower and uppercase letters,
@@ -53,6 +195,25 @@ class Hasher {
         return hash;
     }
 
+    /**
+     * Hashes contents of byte array.
+     * Any byte value is possible, so constant is the prime
+     * right after the number of values, 257.
+     *
+     * @param el bytes for hashing
+     * @return hash code of the element
+     */
+    static int getHashCode(byte[] el) {
+        int hash = 0;
+        final int c = 257;
+
+        for (byte b : el) {
+            hash = c * hash + (b & 0xFF) + 1;
+        }
+
+        return hash;
+    }
+
     /**
      * Hashes char.
      * Returns its integer value.
@@ -0,0 +1,146 @@
+/**
+ * HyperLogLog sketch estimating number of distinct elements
+ * in fixed memory.
+ * Every element is hashed to 64 bits by Hasher.getHashCode64; the
+ * highest bits choose a register, and the register keeps the largest
+ * number of leading zeros seen in the rest of the hash.
+ * With 2^precision registers the standard error of the estimate
+ * is 1.04 / sqrt(2^precision), e.g. 0.8% for precision 14 (16 KiB).
+ * Sketches of the same precision can be merged, so every thread
+ * may count into its own one.
+ *
+ * @param <E> type of elements
+ */
+class HyperLogLog<E> {
+    ////////// PRIVATE FIELDS //////////
+    private final int precision;
+    // largest rank seen per register
+    private final byte[] registers;
+
+    ////////// PUBLIC METHODS //////////
+
+    /**
+     * Constructs empty HyperLogLog with 2^precision registers.
+     *
+     * @param precision number of bits choosing a register, from 4 to 18
+     * @throws IllegalArgumentException if precision is out of range
+     */
+    HyperLogLog(int precision) throws IllegalArgumentException {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("Precision must be in [4, 18].");
+        }
+
+        this.precision = precision;
+        registers = new byte[1 << precision];
+    }
+
+    /**
+     * Counts the element.
+     *
+     * @param e element to be counted
+     */
+    public void add(E e) {
+        addHash(Hasher.getHashCode64(e));
+    }
+
+    /**
+     * Counts the element by its well mixed 64-bit hash code.
+     *
+     * @param hash hash code of the element
+     */
+    public void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // the sentinel bit bounds the rank when the rest of the hash is zero
+        long rest = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    /**
+     * Estimates number of distinct counted elements.
+     * Small numbers are estimated by the share of empty registers
+     * (linear counting), which is more precise there.
+     *
+     * @return estimated number of distinct elements
+     */
+    public long cardinality() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+
+        return Math.round(estimate);
+    }
+
+    /**
+     * Adds all elements counted by the other sketch.
+     *
+     * @param other sketch to be merged
+     * @throws IllegalArgumentException if sketches have different precision
+     */
+    public void merge(HyperLogLog<E> other) throws IllegalArgumentException {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Sketches must have the same precision.");
+        }
+
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Returns relative standard error of the estimate.
+     *
+     * @return standard error
+     */
+    public double getStandardError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+
+    /**
+     * Returns number of bits choosing a register.
+     *
+     * @return precision
+     */
+    public int getPrecision() {
+        return precision;
+    }
+
+    ////////// PRIVATE METHODS //////////
+
+    /**
+     * Returns bias correction constant for the number of registers.
+     *
+     * @param m number of registers
+     * @return correction constant
+     */
+    private static double alpha(int m) {
+        if (m == 16) {
+            return 0.673;
+        }
+        else if (m == 32) {
+            return 0.697;
+        }
+        else if (m == 64) {
+            return 0.709;
+        }
+
+        return 0.7213 / (1 + 1.079 / m);
+    }
+}
@@ -0,0 +1,592 @@
+import java.util.NoSuchElementException;
+
+/**
+ * Implementation of Map with Hashes.
+ * Uses Quadratic Probing, same as HashMap, but grows incrementally:
+ * when the table gets too full, a new table of double capacity is
+ * allocated and the old one is kept alongside it. Every get, put and
+ * remove then moves a bounded number of slots from the old table to
+ * the new one, so no single operation has to rehash the whole map.
+ * Creating an iterator of a view finishes the migration, since
+ * iteration takes linear time anyway; reads made while iterating
+ * then have nothing to move and cannot hide entries from the iterator.
+ *
+ * @param <K> type of keys
+ * @param <V> type of values
+ */
+class IncrementalHashMap<K, V> implements Map<K, V> {
+    ////////// PRIVATE FIELDS //////////
+    // number of old slots moved by every operation during migration
+    private static final int MIGRATION_STEP = 8;
+    private static final Object dummy = new Object();
+    // we put dummy as a key if the element is deleted or migrated
+
+    private int size;
+    private int capacity;
+    private Object[] keys;
+    private Object[] values;
+    private int[] hashes;
+    // deleted slots in the current table
+    private int removedCount;
+
+    // table being migrated, null if there is no migration
+    private Object[] oldKeys;
+    private Object[] oldValues;
+    private int[] oldHashes;
+    // slots of the old table before this index are already moved
+    private int migrationIndex;
+
+    private final double maxLoadFactor = 0.75;
+    private int maxProbingSequenceLength;
+
+    ////////// PUBLIC METHODS //////////
+
+    /**
+     * Constructs empty IncrementalHashMap.
+     */
+    IncrementalHashMap() {
+        size = 0;
+        capacity = 16;
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        hashes = new int[capacity];
+        removedCount = 0;
+        oldKeys = null;
+        maxProbingSequenceLength = 0;
+    }
+
+    /**
+     * Return number of entries in the IncrementalHashMap.
+     *
+     * @return size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check whether the IncrementalHashMap is empty.
+     *
+     * @return empty or not
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Checks whether the map is moving entries to a new table.
+     * Every get, containsKey, put and remove moves a step of entries;
+     * creating an iterator of a view moves all the remaining ones.
+     *
+     * @return true if old table is still in use, false otherwise
+     */
+    public boolean isMigrating() {
+        return oldKeys != null;
+    }
+
+    /**
+     * Get value with specified key.
+     *
+     * @param k key to be found
+     * @return element with given key or null if it doesn't exist
+     */
+    @SuppressWarnings("unchecked")
+    public V get(K k) {
+        migrate();
+
+        int hash = Hasher.getHashCode(k);
+        int index = findPlace(keys, hashes, k, hash);
+        if (isFull(keys, index)) {
+            return (V) values[index];
+        }
+
+        if (oldKeys != null) {
+            index = findPlace(oldKeys, oldHashes, k, hash);
+            if (isFull(oldKeys, index)) {
+                return (V) oldValues[index];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Check whether there is an entry with specified key.
+     * Unlike get, tells a key mapped to null from a missing one.
+     * Moves a step of entries to the new table, same as get.
+     *
+     * @param k key to be found
+     * @return true if there is such key, false otherwise
+     */
+    @Override
+    public boolean containsKey(K k) {
+        migrate();
+
+        int hash = Hasher.getHashCode(k);
+        return isFull(keys, findPlace(keys, hashes, k, hash))
+                || (oldKeys != null && isFull(oldKeys, findPlace(oldKeys, oldHashes, k, hash)));
+    }
+
+    /**
+     * Put element with specified key and value and return old value.
+     * If the key is still in the old table, it is moved to the new one.
+     *
+     * @param k key
+     * @param v value
+     * @return old value with specified key or null if it didn't exist
+     */
+    @SuppressWarnings("unchecked")
+    public V put(K k, V v) {
+        migrate();
+
+        int hash = Hasher.getHashCode(k);
+        int index = findPlace(keys, hashes, k, hash);
+
+        if (isFull(keys, index)) {
+            V old = (V) values[index];
+            values[index] = v;
+            return old;
+        }
+
+        V old = null;
+        boolean existed = false;
+        if (oldKeys != null) {
+            int oldIndex = findPlace(oldKeys, oldHashes, k, hash);
+            if (isFull(oldKeys, oldIndex)) {
+                old = (V) oldValues[oldIndex];
+                oldKeys[oldIndex] = dummy;
+                oldValues[oldIndex] = null;
+                existed = true;
+            }
+        }
+
+        if (keys[index] == dummy) {
+            removedCount--;
+        }
+        keys[index] = k;
+        values[index] = v;
+        hashes[index] = hash;
+        if (!existed) {
+            size++;
+        }
+
+        resize();
+
+        return old;
+    }
+
+    /**
+     * Remove the element with specified key and return its value or null
+     * if it didn't exist.
+     *
+     * @param k key
+     * @return the removed value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(K k) {
+        migrate();
+
+        int hash = Hasher.getHashCode(k);
+        int index = findPlace(keys, hashes, k, hash);
+
+        if (isFull(keys, index)) {
+            V removed = (V) values[index];
+            keys[index] = dummy;
+            values[index] = null;
+            removedCount++;
+            size--;
+            return removed;
+        }
+
+        if (oldKeys != null) {
+            index = findPlace(oldKeys, oldHashes, k, hash);
+            if (isFull(oldKeys, index)) {
+                V removed = (V) oldValues[index];
+                oldKeys[index] = dummy;
+                oldValues[index] = null;
+                size--;
+                return removed;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Return maximal probing sequence in IncrementalHashMap.
+     * Probes in both tables are considered while migrating.
+     * The value is reset when migration to a new table starts.
+     *
+     * @return length of maximal probing sequence
+     */
+    public int getMaxProbingSequenceLength() {
+        return maxProbingSequenceLength;
+    }
+
+    /// VIEWS OF INCREMENTALHASHMAP ///
+
+    /**
+     * Returns the set of entries of the IncrementalHashMap.
+     *
+     * @return set of entries
+     */
+    public Set<Entry<K, V>> entrySet() {
+        return new EntrySet();
+    }
+
+    /**
+     * Returns the set of keys of the IncrementalHashMap.
+     *
+     * @return set of keys
+     */
+    public Set<K> keySet() {
+        return new KeySet();
+    }
+
+    /**
+     * Returns the collection of values in the IncrementalHashMap.
+     *
+     * @return collection of values
+     */
+    public Collection<V> values() {
+        return new ValueCollection();
+    }
+
+    /**
+     * Non-mutable set of entries of the IncrementalHashMap.
+     */
+    @SuppressWarnings("unchecked")
+    private class EntrySet implements Set<Entry<K, V>> {
+        /**
+         * Checks whether the set is empty.
+         *
+         * @return true if empty, false otherwise
+         */
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Returns the size of the set.
+         *
+         * @return size of the set
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns an iterator over elements of the set.
+         *
+         * @return iterator over elements
+         */
+        public Iterator<Entry<K, V>> iterator() {
+            return new SlotIterator<Entry<K, V>>() {
+                Entry<K, V> at(Object[] tableKeys, Object[] tableValues, int index) {
+                    return new Entry<>((K) tableKeys[index], (V) tableValues[index]);
+                }
+            };
+        }
+
+        /**
+         * Checks whether the key of the entry is in the set.
+         *
+         * @param o object to be checked
+         * @return true if contains, false otherwise
+         */
+        public boolean contains(Object o) {
+            return containsKey((K) o);
+        }
+    }
+
+    /**
+     * Non-mutable set of keys of the IncrementalHashMap.
+     */
+    @SuppressWarnings("unchecked")
+    private class KeySet implements Set<K> {
+        /**
+         * Checks whether the set is empty.
+         *
+         * @return true if empty, false otherwise
+         */
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Returns the size of the set.
+         *
+         * @return size of the set
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns an iterator over elements of the set.
+         *
+         * @return iterator over elements
+         */
+        public Iterator<K> iterator() {
+            return new SlotIterator<K>() {
+                K at(Object[] tableKeys, Object[] tableValues, int index) {
+                    return (K) tableKeys[index];
+                }
+            };
+        }
+
+        /**
+         * Checks whether the element is in the set.
+         *
+         * @param o object to be checked
+         * @return true if contains, false otherwise
+         */
+        public boolean contains(Object o) {
+            return containsKey((K) o);
+        }
+    }
+
+    /**
+     * Non-mutable collection of values of the IncrementalHashMap.
+     */
+    @SuppressWarnings("unchecked")
+    private class ValueCollection implements Collection<V> {
+        /**
+         * Checks whether the collection is empty.
+         *
+         * @return true if empty, false otherwise
+         */
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Returns the size of the collection.
+         *
+         * @return size of the collection
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns an iterator over elements of the collection.
+         *
+         * @return iterator over elements
+         */
+        public Iterator<V> iterator() {
+            return new SlotIterator<V>() {
+                V at(Object[] tableKeys, Object[] tableValues, int index) {
+                    return (V) tableValues[index];
+                }
+            };
+        }
+    }
+
+    /**
+     * Iterator over the occupied slots of the current table.
+     * The migration is finished when the iterator is created: otherwise
+     * a read moving an entry of the old table into a slot already
+     * passed would hide it from the iterator.
+     *
+     * @param <T> type of elements produced from a slot
+     */
+    private abstract class SlotIterator<T> implements Iterator<T> {
+        private int currentIndex = 0;
+
+        /**
+         * Creates iterator over the map with no old table.
+         */
+        SlotIterator() {
+            finishMigration();
+        }
+
+        /**
+         * Produces element from the occupied slot.
+         *
+         * @param tableKeys keys of the table the slot belongs to
+         * @param tableValues values of the table the slot belongs to
+         * @param index index of the slot
+         * @return element of the slot
+         */
+        abstract T at(Object[] tableKeys, Object[] tableValues, int index);
+
+        /**
+         * Checks whether there are next slots in the IncrementalHashMap.
+         *
+         * @return true if there is occupied slot ahead, false otherwise
+         */
+        public boolean hasNext() {
+            while (currentIndex < capacity) {
+                if (isFull(keys, currentIndex)) {
+                    return true;
+                }
+                currentIndex++;
+            }
+
+            return false;
+        }
+
+        /**
+         * Returns the element of the next occupied slot.
+         *
+         * @return the next element if it exists
+         * @throws NoSuchElementException if the element doesn't exist
+         */
+        public T next() throws NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return at(keys, values, currentIndex++);
+        }
+    }
+
+    ////////// PRIVATE METHODS //////////
+
+    /**
+     * Checks whether the slot holds an entry.
+     *
+     * @param tableKeys keys of the table
+     * @param index index of the slot
+     * @return true if the slot is neither empty nor deleted
+     */
+    private static boolean isFull(Object[] tableKeys, int index) {
+        return tableKeys[index] != null && tableKeys[index] != dummy;
+    }
+
+    /**
+     * Compresses hashcode so that it can be used as index.
+     * Capacity is always a power of two, so lowest bits are
+     * taken with a mask instead of dividing.
+     *
+     * @param hash hash value of the key
+     * @param tableCapacity capacity of the table
+     * @return truncated hash
+     */
+    private static int compress(int hash, int tableCapacity) {
+        return hash & (tableCapacity - 1);
+    }
+
+    /**
+     * Finds slot with specified key in the given table.
+     * Assumes quadratic probing implemented. Steps grow by one
+     * each time, so the probe visits triangular offsets, which cover
+     * every slot of the table when capacity is a power of two.
+     *
+     * @param tableKeys keys of the table
+     * @param tableHashes hash codes of the table
+     * @param key key to be searched
+     * @param hash hash code of the key
+     * @return index of the slot with specified key or where it should be placed
+     */
+    private int findPlace(Object[] tableKeys, int[] tableHashes, K key, int hash) {
+        int tableCapacity = tableKeys.length;
+        int index = compress(hash, tableCapacity);
+        // first deleted slot on the way, it is reused for insertion
+        int removedIndex = -1;
+
+        // online counting of probes
+        int probesCount = 0;
+        for (int jump = 1; jump <= tableCapacity; jump++) {
+            Object current = tableKeys[index];
+
+            if (current == null) {
+                break;
+            }
+
+            if (current == dummy) {
+                if (removedIndex < 0) {
+                    removedIndex = index;
+                }
+            }
+            else if (tableHashes[index] == hash && current.equals(key)) {
+                maxProbingSequenceLength = Math.max(maxProbingSequenceLength, probesCount);
+                return index;
+            }
+
+            index = compress(index + jump, tableCapacity);
+            probesCount++;
+        }
+
+        maxProbingSequenceLength = Math.max(maxProbingSequenceLength, probesCount);
+        return removedIndex < 0 ? index : removedIndex;
+    }
+
+    /**
+     * Moves next MIGRATION_STEP slots of the old table to the current one.
+     * Moved slots are marked as deleted, so that probing sequences
+     * of the old table going through them stay unbroken.
+     */
+    @SuppressWarnings("unchecked")
+    private void migrate() {
+        if (oldKeys == null) {
+            return;
+        }
+
+        int end = Math.min(migrationIndex + MIGRATION_STEP, oldKeys.length);
+        for (; migrationIndex < end; migrationIndex++) {
+            if (isFull(oldKeys, migrationIndex)) {
+                K key = (K) oldKeys[migrationIndex];
+                int hash = oldHashes[migrationIndex];
+                int index = findPlace(keys, hashes, key, hash);
+
+                if (keys[index] == dummy) {
+                    removedCount--;
+                }
+                keys[index] = key;
+                values[index] = oldValues[migrationIndex];
+                hashes[index] = hash;
+
+                oldKeys[migrationIndex] = dummy;
+                oldValues[migrationIndex] = null;
+            }
+        }
+
+        if (migrationIndex == oldKeys.length) {
+            oldKeys = null;
+            oldValues = null;
+            oldHashes = null;
+        }
+    }
+
+    /**
+     * Moves all remaining slots of the old table to the current one.
+     */
+    private void finishMigration() {
+        while (oldKeys != null) {
+            migrate();
+        }
+    }
+
+    /**
+     * Starts migration to a table of double capacity if loadFactor
+     * of the current table is too high. Deleted slots are counted in
+     * the load as well, since they lengthen probing sequences.
+     * If previous migration is still running, it is finished first.
+     */
+    private void resize() {
+        double loadFactor = (size + removedCount) * 1.0 / capacity;
+
+        if (loadFactor < maxLoadFactor) {
+            return;
+        }
+
+        finishMigration();
+
+        oldKeys = keys;
+        oldValues = values;
+        oldHashes = hashes;
+        migrationIndex = 0;
+
+        // table full of deleted slots is rebuilt with the same capacity
+        if (size * 2.0 / capacity >= maxLoadFactor) {
+            capacity *= 2;
+        }
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        hashes = new int[capacity];
+        removedCount = 0;
+        maxProbingSequenceLength = 0;
+    }
+}
@@ -0,0 +1,287 @@
+/**
+ * Implementation of Map from int to int with Hashes.
+ * Uses Quadratic Probing, same as HashMap, but keys and values
+ * are stored in flat primitive arrays, so neither boxing
+ * nor Entry objects are needed.
+ */
+class IntIntHashMap {
+    ////////// PRIVATE FIELDS //////////
+    private static final byte FREE = 0;
+    private static final byte FULL = 1;
+    // we put REMOVED if the element is deleted
+    private static final byte REMOVED = 2;
+
+    private int size;
+    // number of slots marked as REMOVED
+    private int removedCount;
+    private int capacity;
+    private int[] keys;
+    private int[] values;
+    private byte[] states;
+    private final int noEntryValue;
+    private final double maxLoadFactor = 0.75;
+    private int maxProbingSequenceLength;
+
+    ////////// PUBLIC METHODS //////////
+
+    /**
+     * Constructs empty IntIntHashMap.
+     * Missing keys are reported as 0.
+     */
+    IntIntHashMap() {
+        this(0);
+    }
+
+    /**
+     * Constructs empty IntIntHashMap.
+     *
+     * @param noEntryValue value returned for missing keys
+     */
+    IntIntHashMap(int noEntryValue) {
+        this.noEntryValue = noEntryValue;
+        size = 0;
+        removedCount = 0;
+        capacity = 16;
+        keys = new int[capacity];
+        values = new int[capacity];
+        states = new byte[capacity];
+        maxProbingSequenceLength = 0;
+    }
+
+    /**
+     * Return number of entries in the IntIntHashMap.
+     *
+     * @return size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check whether the IntIntHashMap is empty.
+     *
+     * @return empty or not
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Return value which stands for a missing key.
+     *
+     * @return value returned by get, put and remove if there is no such key
+     */
+    public int getNoEntryValue() {
+        return noEntryValue;
+    }
+
+    /**
+     * Checks whether there is an entry with specified key.
+     *
+     * @param k key to be found
+     * @return true if the key is in the map, false otherwise
+     */
+    public boolean containsKey(int k) {
+        return states[findPlace(k)] == FULL;
+    }
+
+    /**
+     * Get value with specified key.
+     *
+     * @param k key to be found
+     * @return element with given key or noEntryValue if it doesn't exist
+     */
+    public int get(int k) {
+        int index = findPlace(k);
+        return states[index] == FULL ? values[index] : noEntryValue;
+    }
+
+    /**
+     * Put element with specified key and value and return old value.
+     *
+     * @param k key
+     * @param v value
+     * @return old value with specified key or noEntryValue if it didn't exist
+     */
+    public int put(int k, int v) {
+        int index = findPlace(k);
+        int old = noEntryValue;
+
+        if (states[index] != FULL) {
+            if (states[index] == REMOVED) {
+                removedCount--;
+            }
+            keys[index] = k;
+            values[index] = v;
+            states[index] = FULL;
+            size++;
+        }
+        else {
+            old = values[index];
+            values[index] = v;
+        }
+
+        resize();
+
+        return old;
+    }
+
+    /**
+     * Remove the element with specified key and return its value or
+     * noEntryValue if it didn't exist.
+     *
+     * @param k key
+     * @return the removed value or noEntryValue
+     */
+    public int remove(int k) {
+        int index = findPlace(k);
+        int removed = noEntryValue;
+
+        if (states[index] == FULL) {
+            removed = values[index];
+            states[index] = REMOVED;
+            removedCount++;
+            size--;
+        }
+
+        return removed;
+    }
+
+    /**
+     * Return maximal probing sequence in IntIntHashMap.
+     * Current state of the map is considered, i.e.
+     * if maximal probing sequence was longer before
+     * rehash, it will be overridden by current one.
+     *
+     * @return length of maximal probing sequence
+     */
+    public int getMaxProbingSequenceLength() {
+        return maxProbingSequenceLength;
+    }
+
+    /**
+     * Returns keys of the IntIntHashMap in table order.
+     *
+     * @return new array with all keys
+     */
+    public int[] keys() {
+        int[] result = new int[size];
+        int j = 0;
+
+        for (int i = 0; i < capacity; i++) {
+            if (states[i] == FULL) {
+                result[j++] = keys[i];
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns values of the IntIntHashMap in table order,
+     * i.e. in the same order as keys() returns keys.
+     *
+     * @return new array with all values
+     */
+    public int[] values() {
+        int[] result = new int[size];
+        int j = 0;
+
+        for (int i = 0; i < capacity; i++) {
+            if (states[i] == FULL) {
+                result[j++] = values[i];
+            }
+        }
+
+        return result;
+    }
+
+    ////////// PRIVATE METHODS //////////
+
+    /**
+     * Compresses hashcode so that it can be used as index.
+     * Capacity is always a power of two, so lowest bits are
+     * taken with a mask instead of dividing.
+     *
+     * @param hash hash value of the key
+     * @return truncated hash
+     */
+    private int compress(int hash) {
+        return hash & (capacity - 1);
+    }
+
+    /**
+     * Finds slot with specified key.
+     * Assumes quadratic probing implemented. Steps grow by one
+     * each time, so the probe visits triangular offsets, which cover
+     * every slot of the table when capacity is a power of two.
+     *
+     * @param key key to be searched
+     * @return index of the slot with specified key or of the slot
+     * where it should be placed
+     */
+    private int findPlace(int key) {
+        int index = compress(Hasher.getHashCode(key));
+        // first deleted slot on the way, it is reused for insertion
+        int removedIndex = -1;
+
+        // online counting of probes
+        int probesCount = 0;
+        for (int jump = 1; jump <= capacity; jump++) {
+            if (states[index] == FREE) {
+                break;
+            }
+
+            if (states[index] == FULL && keys[index] == key) {
+                maxProbingSequenceLength = Math.max(maxProbingSequenceLength, probesCount);
+                return index;
+            }
+
+            if (states[index] == REMOVED && removedIndex < 0) {
+                removedIndex = index;
+            }
+
+            index = compress(index + jump);
+            probesCount++;
+        }
+
+        maxProbingSequenceLength = Math.max(maxProbingSequenceLength, probesCount);
+        return removedIndex < 0 ? index : removedIndex;
+    }
+
+    /**
+     * Increases size of the IntIntHashMap if loadFactor is too high.
+     * This increases speed of access and preserve from overflow.
+     * Deleted slots are counted in the load as well, since they
+     * lengthen probing sequences the same way; if most of the load
+     * is made of them, the table is rebuilt with the same capacity.
+     */
+    private void resize() {
+        double loadFactor = (size + removedCount) * 1.0 / capacity;
+
+        if (loadFactor < maxLoadFactor) {
+            return;
+        }
+
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        byte[] oldStates = states;
+        if (size * 2.0 / capacity >= maxLoadFactor) {
+            capacity *= 2;
+        }
+        keys = new int[capacity];
+        values = new int[capacity];
+        states = new byte[capacity];
+        removedCount = 0;
+        maxProbingSequenceLength = 0;
+
+        for (int i = 0; i < oldStates.length; i++) {
+            if (oldStates[i] == FULL) {
+                int index = findPlace(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+                states[index] = FULL;
+            }
+        }
+    }
+}
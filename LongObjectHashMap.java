@@ -0,0 +1,253 @@
+/**
+ * Implementation of Map from long to objects with Hashes.
+ * Uses Quadratic Probing, same as HashMap, but keys are stored
+ * in flat primitive array and values in flat array of objects,
+ * so neither boxing of keys nor Entry objects are needed.
+ *
+ * @param <V> type of values
+ */
+class LongObjectHashMap<V> {
+    ////////// PRIVATE FIELDS //////////
+    private static final byte FREE = 0;
+    private static final byte FULL = 1;
+    // we put REMOVED if the element is deleted
+    private static final byte REMOVED = 2;
+
+    private int size;
+    // number of slots marked as REMOVED
+    private int removedCount;
+    private int capacity;
+    private long[] keys;
+    private Object[] values;
+    private byte[] states;
+    private final double maxLoadFactor = 0.75;
+    private int maxProbingSequenceLength;
+
+    ////////// PUBLIC METHODS //////////
+
+    /**
+     * Constructs empty LongObjectHashMap.
+     */
+    LongObjectHashMap() {
+        size = 0;
+        removedCount = 0;
+        capacity = 16;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        states = new byte[capacity];
+        maxProbingSequenceLength = 0;
+    }
+
+    /**
+     * Return number of entries in the LongObjectHashMap.
+     *
+     * @return size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check whether the LongObjectHashMap is empty.
+     *
+     * @return empty or not
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Checks whether there is an entry with specified key.
+     *
+     * @param k key to be found
+     * @return true if the key is in the map, false otherwise
+     */
+    public boolean containsKey(long k) {
+        return states[findPlace(k)] == FULL;
+    }
+
+    /**
+     * Get value with specified key.
+     *
+     * @param k key to be found
+     * @return element with given key or null if it doesn't exist
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long k) {
+        int index = findPlace(k);
+        return states[index] == FULL ? (V) values[index] : null;
+    }
+
+    /**
+     * Put element with specified key and value and return old value.
+     *
+     * @param k key
+     * @param v value
+     * @return old value with specified key or null if it didn't exist
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long k, V v) {
+        int index = findPlace(k);
+        V old = null;
+
+        if (states[index] != FULL) {
+            if (states[index] == REMOVED) {
+                removedCount--;
+            }
+            keys[index] = k;
+            values[index] = v;
+            states[index] = FULL;
+            size++;
+        }
+        else {
+            old = (V) values[index];
+            values[index] = v;
+        }
+
+        resize();
+
+        return old;
+    }
+
+    /**
+     * Remove the element with specified key and return its value or null
+     * if it didn't exist.
+     *
+     * @param k key
+     * @return the removed value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long k) {
+        int index = findPlace(k);
+        V removed = null;
+
+        if (states[index] == FULL) {
+            removed = (V) values[index];
+            values[index] = null;
+            states[index] = REMOVED;
+            removedCount++;
+            size--;
+        }
+
+        return removed;
+    }
+
+    /**
+     * Return maximal probing sequence in LongObjectHashMap.
+     * Current state of the map is considered, i.e.
+     * if maximal probing sequence was longer before
+     * rehash, it will be overridden by current one.
+     *
+     * @return length of maximal probing sequence
+     */
+    public int getMaxProbingSequenceLength() {
+        return maxProbingSequenceLength;
+    }
+
+    /**
+     * Returns keys of the LongObjectHashMap in table order.
+     *
+     * @return new array with all keys
+     */
+    public long[] keys() {
+        long[] result = new long[size];
+        int j = 0;
+
+        for (int i = 0; i < capacity; i++) {
+            if (states[i] == FULL) {
+                result[j++] = keys[i];
+            }
+        }
+
+        return result;
+    }
+
+    ////////// PRIVATE METHODS //////////
+
+    /**
+     * Compresses hashcode so that it can be used as index.
+     * Capacity is always a power of two, so lowest bits are
+     * taken with a mask instead of dividing.
+     *
+     * @param hash hash value of the key
+     * @return truncated hash
+     */
+    private int compress(int hash) {
+        return hash & (capacity - 1);
+    }
+
+    /**
+     * Finds slot with specified key.
+     * Assumes quadratic probing implemented. Steps grow by one
+     * each time, so the probe visits triangular offsets, which cover
+     * every slot of the table when capacity is a power of two.
+     *
+     * @param key key to be searched
+     * @return index of the slot with specified key or of the slot
+     * where it should be placed
+     */
+    private int findPlace(long key) {
+        int index = compress(Hasher.getHashCode(key));
+        // first deleted slot on the way, it is reused for insertion
+        int removedIndex = -1;
+
+        // online counting of probes
+        int probesCount = 0;
+        for (int jump = 1; jump <= capacity; jump++) {
+            if (states[index] == FREE) {
+                break;
+            }
+
+            if (states[index] == FULL && keys[index] == key) {
+                maxProbingSequenceLength = Math.max(maxProbingSequenceLength, probesCount);
+                return index;
+            }
+
+            if (states[index] == REMOVED && removedIndex < 0) {
+                removedIndex = index;
+            }
+
+            index = compress(index + jump);
+            probesCount++;
+        }
+
+        maxProbingSequenceLength = Math.max(maxProbingSequenceLength, probesCount);
+        return removedIndex < 0 ? index : removedIndex;
+    }
+
+    /**
+     * Increases size of the LongObjectHashMap if loadFactor is too high.
+     * This increases speed of access and preserve from overflow.
+     * Deleted slots are counted in the load as well, since they
+     * lengthen probing sequences the same way; if most of the load
+     * is made of them, the table is rebuilt with the same capacity.
+     */
+    private void resize() {
+        double loadFactor = (size + removedCount) * 1.0 / capacity;
+
+        if (loadFactor < maxLoadFactor) {
+            return;
+        }
+
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        byte[] oldStates = states;
+        if (size * 2.0 / capacity >= maxLoadFactor) {
+            capacity *= 2;
+        }
+        keys = new long[capacity];
+        values = new Object[capacity];
+        states = new byte[capacity];
+        removedCount = 0;
+        maxProbingSequenceLength = 0;
+
+        for (int i = 0; i < oldStates.length; i++) {
+            if (oldStates[i] == FULL) {
+                int index = findPlace(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+                states[index] = FULL;
+            }
+        }
+    }
+}
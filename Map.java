@@ -1,3 +1,6 @@
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
 /**
  * Interface of Map.
  *
@@ -45,6 +48,116 @@ interface Map<K, V> {
      */
     V remove(K k);
 
+    /**
+     * Check whether there is an entry with specified key.
+     * The default implementation goes through get, so it can't tell
+     * a key mapped to null from a missing one; maps allowing null
+     * values override it.
+     *
+     * @param k key to be found
+     * @return true if there is such key, false otherwise
+     */
+    default boolean containsKey(K k) {
+        return get(k) != null;
+    }
+
+    /**
+     * Get value with specified key or the default one if there is no such key.
+     *
+     * @param k key to be found
+     * @param defaultValue value returned if the key doesn't exist
+     * @return element with given key or defaultValue
+     */
+    default V getOrDefault(K k, V defaultValue) {
+        V v = get(k);
+        return v != null ? v : defaultValue;
+    }
+
+    /**
+     * Put element with specified key and value only if there is no such key.
+     *
+     * @param k key
+     * @param v value
+     * @return current value with specified key or null if it didn't exist
+     */
+    default V putIfAbsent(K k, V v) {
+        V current = get(k);
+        if (current == null) {
+            put(k, v);
+        }
+
+        return current;
+    }
+
+    /**
+     * Computes value for the key if there is no such key and puts it,
+     * unless the computed value is null.
+     *
+     * @param k key
+     * @param mapping function computing value from the key
+     * @return current or computed value, null if computed value is null
+     */
+    default V computeIfAbsent(K k, Function<? super K, ? extends V> mapping) {
+        V current = get(k);
+        if (current != null) {
+            return current;
+        }
+
+        V computed = mapping.apply(k);
+        if (computed != null) {
+            put(k, computed);
+        }
+
+        return computed;
+    }
+
+    /**
+     * Computes new value for the key from the key and its current value
+     * (null if there is no such key) and puts it.
+     * If the new value is null, the key is removed.
+     *
+     * @param k key
+     * @param remapping function computing new value
+     * @return new value
+     */
+    default V compute(K k, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        V current = get(k);
+        V computed = remapping.apply(k, current);
+
+        if (computed != null) {
+            put(k, computed);
+        }
+        else if (current != null) {
+            remove(k);
+        }
+
+        return computed;
+    }
+
+    /**
+     * Puts the value if there is no such key, otherwise combines
+     * current value with the given one and puts the result.
+     * If the result is null, the key is removed.
+     *
+     * @param k key
+     * @param v value to be put or combined
+     * @param remapping function combining current and given values
+     * @return new value
+     */
+    default V merge(K k, V v, BiFunction<? super V, ? super V, ? extends V> remapping) {
+        V current = get(k);
+        V computed = current == null ? v : remapping.apply(current, v);
+
+        if (computed != null) {
+            put(k, computed);
+        }
+        else {
+            remove(k);
+        }
+
+        return computed;
+    }
+
     /**
      * Returns the set of keys.
      *
@@ -0,0 +1,579 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Implementation of Map with Hashes stored outside of the Java heap.
+ * Keys and values are byte arrays of fixed width. Every slot takes
+ * one state byte followed by the key and the value, and slots are
+ * laid out in direct or memory-mapped ByteBuffers, so the garbage
+ * collector never sees the entries.
+ * Uses Quadratic Probing, same as HashMap.
+ * A map opened on a file is kept in that file: a restarted process
+ * maps it again and may serve lookups right away.
+ * If the process dies in the middle of put, the file stays usable:
+ * key and value bytes are written before the state byte, so a slot
+ * is never seen FULL with a partly written key, and resize replaces
+ * the file with a whole new table at once. The file does not promise
+ * more than that: replacing the value of an existing key may leave it
+ * partly written, the size in the header is written separately from
+ * the slots and may be off by the interrupted change, and nothing
+ * survives a crash of the operating system unless force was called.
+ */
+class OffHeapHashMap implements Closeable {
+    ////////// PRIVATE FIELDS //////////
+    private static final byte FREE = 0;
+    private static final byte FULL = 1;
+    // we put REMOVED if the element is deleted
+    private static final byte REMOVED = 2;
+
+    private static final long MAGIC = 0x4F4848414D415031L;
+    private static final int VERSION = 1;
+    // magic, version, key width, value width, capacity, size, removed count
+    private static final int HEADER_SIZE = 64;
+    private static final int MAX_CHUNK_BYTES = 1 << 30;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final int keyWidth;
+    private final int valueWidth;
+    private final int slotSize;
+    // backing file, null if the map lives in direct memory
+    private final Path file;
+
+    private int size;
+    private int removedCount;
+    private int capacity;
+    private ByteBuffer header;
+    private ByteBuffer[] chunks;
+    // every chunk holds 2^chunkBits slots
+    private int chunkBits;
+    private final double maxLoadFactor = 0.75;
+    private int maxProbingSequenceLength;
+
+    ////////// PUBLIC METHODS //////////
+
+    /**
+     * Constructs empty OffHeapHashMap in direct memory.
+     *
+     * @param keyWidth number of bytes in every key
+     * @param valueWidth number of bytes in every value
+     * @throws IllegalArgumentException if a width is not positive
+     */
+    OffHeapHashMap(int keyWidth, int valueWidth) throws IllegalArgumentException {
+        this(null, keyWidth, valueWidth);
+
+        try {
+            allocate(16);
+        } catch (IOException e) {
+            // direct memory is never backed by a file
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Constructs the map object, the table itself is allocated or mapped separately.
+     *
+     * @param file backing file or null
+     * @param keyWidth number of bytes in every key
+     * @param valueWidth number of bytes in every value
+     * @throws IllegalArgumentException if a width is not positive
+     */
+    private OffHeapHashMap(Path file, int keyWidth, int valueWidth) throws IllegalArgumentException {
+        if (keyWidth < 1 || valueWidth < 1) {
+            throw new IllegalArgumentException("Key and value widths must be positive.");
+        }
+
+        this.file = file;
+        this.keyWidth = keyWidth;
+        this.valueWidth = valueWidth;
+        slotSize = 1 + keyWidth + valueWidth;
+        size = 0;
+        removedCount = 0;
+        maxProbingSequenceLength = 0;
+    }
+
+    /**
+     * Opens OffHeapHashMap backed by the file.
+     * If the file holds a table written before, it is mapped as is;
+     * if it does not exist or is empty, new empty table is created in it.
+     * Any other file is never overwritten.
+     *
+     * @param file path of the backing file
+     * @param keyWidth number of bytes in every key
+     * @param valueWidth number of bytes in every value
+     * @return map backed by the file
+     * @throws IOException if the file cannot be read or written
+     * @throws IllegalArgumentException if the file holds a table of other widths
+     *                                  or is corrupt or truncated
+     */
+    static OffHeapHashMap open(Path file, int keyWidth, int valueWidth)
+            throws IOException, IllegalArgumentException {
+        OffHeapHashMap map = new OffHeapHashMap(file, keyWidth, valueWidth);
+
+        if (!Files.exists(file) || Files.size(file) == 0) {
+            map.allocate(16);
+            return map;
+        }
+        if (Files.size(file) < HEADER_SIZE) {
+            throw new IllegalArgumentException("File is too short to hold OffHeapHashMap.");
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+
+            if (header.getLong(0) != MAGIC || header.getInt(8) != VERSION) {
+                throw new IllegalArgumentException("File does not hold OffHeapHashMap.");
+            }
+            if (header.getInt(12) != keyWidth || header.getInt(16) != valueWidth) {
+                throw new IllegalArgumentException("File holds OffHeapHashMap of other widths.");
+            }
+
+            int capacity = header.getInt(20);
+            int size = header.getInt(24);
+            int removedCount = header.getInt(28);
+            if (capacity <= 0 || capacity > MAX_CAPACITY || (capacity & (capacity - 1)) != 0) {
+                throw new IllegalArgumentException("File holds OffHeapHashMap of invalid capacity " + capacity + ".");
+            }
+            if (channel.size() != HEADER_SIZE + (long) capacity * map.slotSize) {
+                throw new IllegalArgumentException("File length does not match OffHeapHashMap of capacity "
+                        + capacity + ".");
+            }
+            if (size < 0 || removedCount < 0 || (long) size + removedCount > capacity) {
+                throw new IllegalArgumentException("File holds OffHeapHashMap of invalid size.");
+            }
+
+            map.map(channel, capacity);
+            map.size = size;
+            map.removedCount = removedCount;
+        }
+
+        return map;
+    }
+
+    /**
+     * Return number of entries in the OffHeapHashMap.
+     *
+     * @return size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check whether the OffHeapHashMap is empty.
+     *
+     * @return empty or not
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Checks whether there is an entry with specified key.
+     *
+     * @param k key to be found
+     * @return true if the key is in the map, false otherwise
+     * @throws IllegalArgumentException if the key is not keyWidth bytes long
+     */
+    public boolean containsKey(byte[] k) throws IllegalArgumentException {
+        checkWidth(k, keyWidth);
+        return state(findPlace(k)) == FULL;
+    }
+
+    /**
+     * Get value with specified key.
+     *
+     * @param k key to be found
+     * @return copy of the value with given key or null if it doesn't exist
+     * @throws IllegalArgumentException if the key is not keyWidth bytes long
+     */
+    public byte[] get(byte[] k) throws IllegalArgumentException {
+        byte[] value = new byte[valueWidth];
+        return get(k, value) ? value : null;
+    }
+
+    /**
+     * Copies value with specified key into given array,
+     * so that no array is allocated per lookup.
+     *
+     * @param k key to be found
+     * @param dst array of valueWidth bytes receiving the value
+     * @return true if the key was found, false otherwise
+     * @throws IllegalArgumentException if the key or dst has wrong length
+     */
+    public boolean get(byte[] k, byte[] dst) throws IllegalArgumentException {
+        checkWidth(k, keyWidth);
+        checkWidth(dst, valueWidth);
+
+        int index = findPlace(k);
+        if (state(index) != FULL) {
+            return false;
+        }
+
+        ByteBuffer chunk = chunks[index >>> chunkBits];
+        int position = offset(index) + 1 + keyWidth;
+        for (int i = 0; i < valueWidth; i++) {
+            dst[i] = chunk.get(position + i);
+        }
+
+        return true;
+    }
+
+    /**
+     * Put element with specified key and value.
+     *
+     * @param k key
+     * @param v value
+     * @return true if old value was replaced, false if the key is new
+     * @throws IOException if the backing file cannot be grown
+     * @throws IllegalArgumentException if the key or value has wrong length
+     * @throws IllegalStateException if the table cannot grow any more
+     */
+    public boolean put(byte[] k, byte[] v) throws IOException, IllegalArgumentException, IllegalStateException {
+        checkWidth(k, keyWidth);
+        checkWidth(v, valueWidth);
+
+        int index = findPlace(k);
+        boolean replaced = state(index) == FULL;
+
+        if (!replaced) {
+            if (state(index) == REMOVED) {
+                removedCount--;
+            }
+            size++;
+        }
+        write(index, k, v);
+        updateHeader();
+
+        if (!replaced) {
+            resize();
+        }
+
+        return replaced;
+    }
+
+    /**
+     * Remove the element with specified key.
+     *
+     * @param k key
+     * @return true if the key was removed, false if it didn't exist
+     * @throws IllegalArgumentException if the key is not keyWidth bytes long
+     */
+    public boolean remove(byte[] k) throws IllegalArgumentException {
+        checkWidth(k, keyWidth);
+
+        int index = findPlace(k);
+        if (state(index) != FULL) {
+            return false;
+        }
+
+        chunks[index >>> chunkBits].put(offset(index), REMOVED);
+        removedCount++;
+        size--;
+        updateHeader();
+
+        return true;
+    }
+
+    /**
+     * Return maximal probing sequence in OffHeapHashMap.
+     * Current state of the map is considered, i.e.
+     * if maximal probing sequence was longer before
+     * rehash, it will be overridden by current one.
+     *
+     * @return length of maximal probing sequence
+     */
+    public int getMaxProbingSequenceLength() {
+        return maxProbingSequenceLength;
+    }
+
+    /**
+     * Writes changes of a file-backed map to the storage device.
+     * Does nothing for a map in direct memory.
+     */
+    public void force() {
+        if (file == null) {
+            return;
+        }
+
+        ((MappedByteBuffer) header).force();
+        for (ByteBuffer chunk : chunks) {
+            ((MappedByteBuffer) chunk).force();
+        }
+    }
+
+    /**
+     * Writes changes to the storage device, see force.
+     * Buffers are released by the garbage collector.
+     */
+    public void close() {
+        force();
+    }
+
+    ////////// PRIVATE METHODS //////////
+
+    /**
+     * Checks that the array has expected length.
+     *
+     * @param bytes array to be checked
+     * @param width expected length
+     * @throws IllegalArgumentException if the length differs
+     */
+    private static void checkWidth(byte[] bytes, int width) throws IllegalArgumentException {
+        if (bytes.length != width) {
+            throw new IllegalArgumentException("Expected " + width + " bytes, got " + bytes.length + ".");
+        }
+    }
+
+    /**
+     * Returns position of the slot inside its chunk.
+     *
+     * @param index index of the slot
+     * @return offset in bytes
+     */
+    private int offset(int index) {
+        return (index & ((1 << chunkBits) - 1)) * slotSize;
+    }
+
+    /**
+     * Returns state byte of the slot.
+     *
+     * @param index index of the slot
+     * @return FREE, FULL or REMOVED
+     */
+    private byte state(int index) {
+        return chunks[index >>> chunkBits].get(offset(index));
+    }
+
+    /**
+     * Writes entry into the slot and marks it FULL.
+     * The state byte goes last, so that a file left by a crash
+     * never has a FULL slot with a partly written key.
+     *
+     * @param index index of the slot
+     * @param k key
+     * @param v value
+     */
+    private void write(int index, byte[] k, byte[] v) {
+        ByteBuffer chunk = chunks[index >>> chunkBits];
+        int position = offset(index);
+
+        for (int i = 0; i < keyWidth; i++) {
+            chunk.put(position + 1 + i, k[i]);
+        }
+        for (int i = 0; i < valueWidth; i++) {
+            chunk.put(position + 1 + keyWidth + i, v[i]);
+        }
+        chunk.put(position, FULL);
+    }
+
+    /**
+     * Compares key in the slot with given one.
+     *
+     * @param index index of the slot
+     * @param k key to be compared
+     * @return true if the keys are equal, false otherwise
+     */
+    private boolean keyEquals(int index, byte[] k) {
+        ByteBuffer chunk = chunks[index >>> chunkBits];
+        int position = offset(index) + 1;
+
+        for (int i = 0; i < keyWidth; i++) {
+            if (chunk.get(position + i) != k[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Finds slot with specified key.
+     * Assumes quadratic probing implemented. Steps grow by one
+     * each time, so the probe visits triangular offsets, which cover
+     * every slot of the table when capacity is a power of two.
+     *
+     * @param key key to be searched
+     * @return index of the slot with specified key or of the slot
+     * where it should be placed
+     */
+    private int findPlace(byte[] key) {
+        int index = Hasher.murmur3(Hasher.getHashCode(key)) & (capacity - 1);
+        // first deleted slot on the way, it is reused for insertion
+        int removedIndex = -1;
+
+        // online counting of probes
+        int probesCount = 0;
+        for (int jump = 1; jump <= capacity; jump++) {
+            byte state = state(index);
+
+            if (state == FREE) {
+                break;
+            }
+
+            if (state == FULL && keyEquals(index, key)) {
+                maxProbingSequenceLength = Math.max(maxProbingSequenceLength, probesCount);
+                return index;
+            }
+
+            if (state == REMOVED && removedIndex < 0) {
+                removedIndex = index;
+            }
+
+            index = (index + jump) & (capacity - 1);
+            probesCount++;
+        }
+
+        maxProbingSequenceLength = Math.max(maxProbingSequenceLength, probesCount);
+        return removedIndex < 0 ? index : removedIndex;
+    }
+
+    /**
+     * Stores size and number of deleted slots in the header,
+     * so that the file describes the table after every change.
+     */
+    private void updateHeader() {
+        header.putInt(24, size);
+        header.putInt(28, removedCount);
+    }
+
+    /**
+     * Allocates empty table of given capacity, in direct memory or
+     * in the backing file, and writes its header.
+     *
+     * @param newCapacity capacity, a power of two
+     * @throws IOException if the file cannot be created
+     */
+    private void allocate(int newCapacity) throws IOException {
+        if (file == null) {
+            header = ByteBuffer.allocateDirect(HEADER_SIZE);
+            layout(newCapacity);
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = ByteBuffer.allocateDirect(chunkBytes());
+            }
+        }
+        else {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                map(channel, newCapacity);
+            }
+        }
+
+        header.putLong(0, MAGIC);
+        header.putInt(8, VERSION);
+        header.putInt(12, keyWidth);
+        header.putInt(16, valueWidth);
+        header.putInt(20, capacity);
+        updateHeader();
+    }
+
+    /**
+     * Maps header and chunks of the table from the file.
+     * Chunks of new table are filled with zeros, i.e. FREE slots.
+     *
+     * @param channel channel of the file
+     * @param newCapacity capacity, a power of two
+     * @throws IOException if the file cannot be mapped
+     */
+    private void map(FileChannel channel, int newCapacity) throws IOException {
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        layout(newCapacity);
+
+        long position = HEADER_SIZE;
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, chunkBytes());
+            position += chunkBytes();
+        }
+    }
+
+    /**
+     * Sets capacity and splits the table into chunks, each of them
+     * addressable by a single ByteBuffer.
+     *
+     * @param newCapacity capacity, a power of two
+     */
+    private void layout(int newCapacity) {
+        capacity = newCapacity;
+        chunkBits = 0;
+        while (chunkBits < 30 && (2L << chunkBits) * slotSize <= MAX_CHUNK_BYTES
+                && (2 << chunkBits) <= capacity) {
+            chunkBits++;
+        }
+        chunks = new ByteBuffer[capacity >>> chunkBits];
+    }
+
+    /**
+     * Returns number of bytes in every chunk.
+     *
+     * @return size of a chunk
+     */
+    private int chunkBytes() {
+        return (1 << chunkBits) * slotSize;
+    }
+
+    /**
+     * Increases size of the OffHeapHashMap if loadFactor is too high.
+     * Deleted slots are counted in the load as well; if most of the
+     * load is made of them, the table is rebuilt with the same capacity.
+     * A file-backed table is rebuilt in a temporary file, which then
+     * replaces the backing file, so the file always holds a whole table.
+     *
+     * @throws IOException if the new table cannot be created
+     * @throws IllegalStateException if the table cannot grow any more
+     */
+    private void resize() throws IOException, IllegalStateException {
+        double loadFactor = (size + removedCount) * 1.0 / capacity;
+
+        if (loadFactor < maxLoadFactor) {
+            return;
+        }
+
+        boolean grow = size * 2.0 / capacity >= maxLoadFactor;
+        // check before doubling, capacity * 2 overflows at MAX_CAPACITY
+        if (grow && capacity >= MAX_CAPACITY) {
+            throw new IllegalStateException("OffHeapHashMap cannot hold more entries.");
+        }
+        int newCapacity = grow ? capacity * 2 : capacity;
+
+        Path tmp = file == null ? null : file.resolveSibling(file.getFileName() + ".resize");
+        OffHeapHashMap rebuilt = new OffHeapHashMap(tmp, keyWidth, valueWidth);
+        rebuilt.allocate(newCapacity);
+
+        byte[] key = new byte[keyWidth];
+        byte[] value = new byte[valueWidth];
+        for (int index = 0; index < capacity; index++) {
+            if (state(index) == FULL) {
+                ByteBuffer chunk = chunks[index >>> chunkBits];
+                int position = offset(index) + 1;
+                for (int i = 0; i < keyWidth; i++) {
+                    key[i] = chunk.get(position + i);
+                }
+                for (int i = 0; i < valueWidth; i++) {
+                    value[i] = chunk.get(position + keyWidth + i);
+                }
+
+                rebuilt.write(rebuilt.findPlace(key), key, value);
+            }
+        }
+        rebuilt.size = size;
+        rebuilt.updateHeader();
+
+        if (file != null) {
+            rebuilt.force();
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        header = rebuilt.header;
+        chunks = rebuilt.chunks;
+        chunkBits = rebuilt.chunkBits;
+        capacity = rebuilt.capacity;
+        removedCount = 0;
+        maxProbingSequenceLength = rebuilt.maxProbingSequenceLength;
+    }
+}
@@ -0,0 +1,486 @@
+import java.util.NoSuchElementException;
+
+/**
+ * Implementation of Map with Hashes.
+ * Uses Robin Hood hashing over Linear Probing: when an entry being
+ * inserted is further from its home slot than the entry occupying
+ * a slot, they are swapped, so distances stay close to each other.
+ * Deletion shifts following entries back instead of leaving a
+ * deleted marker, hence probing sequences never grow because of churn.
+ *
+ * @param <K> type of keys
+ * @param <V> type of values
+ */
+class RobinHoodHashMap<K, V> implements Map<K, V> {
+    ////////// PRIVATE FIELDS //////////
+    private int size;
+    private int capacity;
+    private Object[] keys;
+    private Object[] values;
+    // hash codes of the keys, used to find home slot of each entry
+    private int[] hashes;
+    private final double maxLoadFactor = 0.75;
+    private int maxProbingSequenceLength;
+
+    ////////// PUBLIC METHODS //////////
+
+    /**
+     * Constructs empty RobinHoodHashMap.
+     */
+    RobinHoodHashMap() {
+        size = 0;
+        capacity = 16;
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        hashes = new int[capacity];
+        maxProbingSequenceLength = 0;
+    }
+
+    /**
+     * Return number of entries in the RobinHoodHashMap.
+     *
+     * @return size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check whether the RobinHoodHashMap is empty.
+     *
+     * @return empty or not
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get value with specified key.
+     *
+     * @param k key to be found
+     * @return element with given key or null if it doesn't exist
+     */
+    @SuppressWarnings("unchecked")
+    public V get(K k) {
+        int index = find(k, Hasher.getHashCode(k));
+        return index < 0 ? null : (V) values[index];
+    }
+
+    /**
+     * Check whether there is an entry with specified key.
+     * Unlike get, tells a key mapped to null from a missing one.
+     *
+     * @param k key to be found
+     * @return true if there is such key, false otherwise
+     */
+    @Override
+    public boolean containsKey(K k) {
+        return find(k, Hasher.getHashCode(k)) >= 0;
+    }
+
+    /**
+     * Put element with specified key and value and return old value.
+     *
+     * @param k key
+     * @param v value
+     * @return old value with specified key or null if it didn't exist
+     */
+    @SuppressWarnings("unchecked")
+    public V put(K k, V v) {
+        int hash = Hasher.getHashCode(k);
+        int index = find(k, hash);
+
+        if (index >= 0) {
+            V old = (V) values[index];
+            values[index] = v;
+            return old;
+        }
+
+        insert(k, v, hash);
+        size++;
+        resize();
+
+        return null;
+    }
+
+    /**
+     * Remove the element with specified key and return its value or null
+     * if it didn't exist.
+     * Entries after the removed one are shifted back while they are
+     * not in their home slot, so no deleted markers are left.
+     *
+     * @param k key
+     * @return the removed value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(K k) {
+        int index = find(k, Hasher.getHashCode(k));
+
+        if (index < 0) {
+            return null;
+        }
+
+        V removed = (V) values[index];
+
+        int next = (index + 1) & (capacity - 1);
+        while (keys[next] != null && distance(next) > 0) {
+            keys[index] = keys[next];
+            values[index] = values[next];
+            hashes[index] = hashes[next];
+            index = next;
+            next = (next + 1) & (capacity - 1);
+        }
+
+        keys[index] = null;
+        values[index] = null;
+        size--;
+
+        return removed;
+    }
+
+    /**
+     * Return maximal probing sequence in RobinHoodHashMap.
+     * Current state of the map is considered, i.e.
+     * if maximal probing sequence was longer before
+     * rehash, it will be overridden by current one.
+     *
+     * @return length of maximal probing sequence
+     */
+    public int getMaxProbingSequenceLength() {
+        return maxProbingSequenceLength;
+    }
+
+    /// VIEWS OF ROBINHOODHASHMAP ///
+
+    /**
+     * Returns the set of entries of the RobinHoodHashMap.
+     *
+     * @return set of entries
+     */
+    public Set<Entry<K, V>> entrySet() {
+        return new EntrySet();
+    }
+
+    /**
+     * Returns the set of keys of the RobinHoodHashMap.
+     *
+     * @return set of keys
+     */
+    public Set<K> keySet() {
+        return new KeySet();
+    }
+
+    /**
+     * Returns the collection of values in the RobinHoodHashMap.
+     *
+     * @return collection of values
+     */
+    public Collection<V> values() {
+        return new ValueCollection();
+    }
+
+    /**
+     * Non-mutable set of entries of the RobinHoodHashMap.
+     */
+    @SuppressWarnings("unchecked")
+    private class EntrySet implements Set<Entry<K, V>> {
+        /**
+         * Checks whether the set is empty.
+         *
+         * @return true if empty, false otherwise
+         */
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Returns the size of the set.
+         *
+         * @return size of the set
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns an iterator over elements of the set.
+         *
+         * @return iterator over elements
+         */
+        public Iterator<Entry<K, V>> iterator() {
+            return new SlotIterator<Entry<K, V>>() {
+                Entry<K, V> at(int index) {
+                    return new Entry<>((K) keys[index], (V) values[index]);
+                }
+            };
+        }
+
+        /**
+         * Checks whether the entry is in the set.
+         *
+         * @param o entry to be checked
+         * @return true if contains, false otherwise
+         */
+        public boolean contains(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+
+            Entry<K, V> e = (Entry<K, V>) o;
+            int index = find(e.key, Hasher.getHashCode(e.key));
+            return index >= 0 && (values[index] == null ? e.value == null : values[index].equals(e.value));
+        }
+    }
+
+    /**
+     * Non-mutable set of keys of the RobinHoodHashMap.
+     */
+    @SuppressWarnings("unchecked")
+    private class KeySet implements Set<K> {
+        /**
+         * Checks whether the set is empty.
+         *
+         * @return true if empty, false otherwise
+         */
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Returns the size of the set.
+         *
+         * @return size of the set
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns an iterator over elements of the set.
+         *
+         * @return iterator over elements
+         */
+        public Iterator<K> iterator() {
+            return new SlotIterator<K>() {
+                K at(int index) {
+                    return (K) keys[index];
+                }
+            };
+        }
+
+        /**
+         * Checks whether the key is in the set.
+         *
+         * @param o key to be checked
+         * @return true if contains, false otherwise
+         */
+        public boolean contains(Object o) {
+            return find((K) o, Hasher.getHashCode(o)) >= 0;
+        }
+    }
+
+    /**
+     * Non-mutable collection of values of the RobinHoodHashMap.
+     */
+    @SuppressWarnings("unchecked")
+    private class ValueCollection implements Collection<V> {
+        /**
+         * Checks whether the collection is empty.
+         *
+         * @return true if empty, false otherwise
+         */
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Returns the size of the collection.
+         *
+         * @return size of the collection
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns an iterator over elements of the collection.
+         *
+         * @return iterator over elements
+         */
+        public Iterator<V> iterator() {
+            return new SlotIterator<V>() {
+                V at(int index) {
+                    return (V) values[index];
+                }
+            };
+        }
+    }
+
+    /**
+     * Iterator over the occupied slots of RobinHoodHashMap.
+     *
+     * @param <T> type of elements produced from a slot
+     */
+    private abstract class SlotIterator<T> implements Iterator<T> {
+        private int currentIndex = 0;
+
+        /**
+         * Produces element from the occupied slot.
+         *
+         * @param index index of the slot
+         * @return element of the slot
+         */
+        abstract T at(int index);
+
+        /**
+         * Checks whether there are next slots in the RobinHoodHashMap.
+         *
+         * @return true if there is occupied slot ahead, false otherwise
+         */
+        public boolean hasNext() {
+            while (currentIndex < capacity) {
+                if (keys[currentIndex] != null) {
+                    return true;
+                }
+                currentIndex++;
+            }
+
+            return false;
+        }
+
+        /**
+         * Returns the element of the next occupied slot.
+         *
+         * @return the next element if it exists
+         * @throws NoSuchElementException if the element doesn't exist
+         */
+        public T next() throws NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return at(currentIndex++);
+        }
+    }
+
+    ////////// PRIVATE METHODS //////////
+
+    /**
+     * Compresses hashcode so that it can be used as index.
+     * Capacity is always a power of two, so lowest bits are
+     * taken with a mask instead of dividing.
+     *
+     * @param hash hash value of the key
+     * @return truncated hash
+     */
+    private int compress(int hash) {
+        return hash & (capacity - 1);
+    }
+
+    /**
+     * Returns how far the entry in the slot is from its home slot.
+     *
+     * @param index index of occupied slot
+     * @return distance from the home slot
+     */
+    private int distance(int index) {
+        return (index - compress(hashes[index])) & (capacity - 1);
+    }
+
+    /**
+     * Finds slot with specified key.
+     * The search stops as soon as it meets an entry closer to its
+     * home than the searched key would be, since Robin Hood insertion
+     * would have placed the key before such entry.
+     *
+     * @param key key to be searched
+     * @param hash hash code of the key
+     * @return index of the slot with specified key or -1 if it doesn't exist
+     */
+    private int find(K key, int hash) {
+        int index = compress(hash);
+
+        // online counting of probes
+        int probesCount = 0;
+        while (keys[index] != null && distance(index) >= probesCount) {
+            if (hashes[index] == hash && keys[index].equals(key)) {
+                maxProbingSequenceLength = Math.max(maxProbingSequenceLength, probesCount);
+                return index;
+            }
+
+            index = (index + 1) & (capacity - 1);
+            probesCount++;
+        }
+
+        maxProbingSequenceLength = Math.max(maxProbingSequenceLength, probesCount);
+        return -1;
+    }
+
+    /**
+     * Places new entry into the table.
+     * Assumes the key is not in the table yet.
+     *
+     * @param key key of the entry
+     * @param value value of the entry
+     * @param hash hash code of the key
+     */
+    private void insert(Object key, Object value, int hash) {
+        int index = compress(hash);
+        int probesCount = 0;
+
+        while (keys[index] != null) {
+            int existing = distance(index);
+
+            // take the slot from the richer entry and carry it further
+            if (existing < probesCount) {
+                Object displacedKey = keys[index];
+                Object displacedValue = values[index];
+                int displacedHash = hashes[index];
+
+                keys[index] = key;
+                values[index] = value;
+                hashes[index] = hash;
+
+                key = displacedKey;
+                value = displacedValue;
+                hash = displacedHash;
+                probesCount = existing;
+            }
+
+            index = (index + 1) & (capacity - 1);
+            probesCount++;
+            maxProbingSequenceLength = Math.max(maxProbingSequenceLength, probesCount);
+        }
+
+        keys[index] = key;
+        values[index] = value;
+        hashes[index] = hash;
+    }
+
+    /**
+     * Increases size of the RobinHoodHashMap if loadFactor is too high.
+     * This increases speed of access and preserve from overflow.
+     */
+    private void resize() {
+        double loadFactor = size * 1.0 / capacity;
+
+        if (loadFactor < maxLoadFactor) {
+            return;
+        }
+
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        int[] oldHashes = hashes;
+        capacity *= 2;
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        hashes = new int[capacity];
+        maxProbingSequenceLength = 0;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                insert(oldKeys[i], oldValues[i], oldHashes[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,335 @@
+import java.util.NoSuchElementException;
+
+/**
+ * Implementation of Map for maps which are usually tiny.
+ * Up to THRESHOLD entries are kept in a single packed array of keys
+ * and values (key, value, key, value, ...) searched linearly, which is
+ * faster than hashing for so few entries and costs one small array.
+ * When the map grows past THRESHOLD entries, they are moved to a
+ * HashMap and all further operations go to it; the map never
+ * switches back. Views check on every call where the entries are,
+ * so views taken before the switch keep seeing the map after it.
+ *
+ * @param <K> type of keys
+ * @param <V> type of values
+ */
+class SmallMap<K, V> implements Map<K, V> {
+    /**
+     * Largest number of entries kept in the packed array.
+     */
+    static final int THRESHOLD = 8;
+
+    ////////// PRIVATE FIELDS //////////
+    // entries before the first put
+    private static final int INITIAL_CAPACITY = 2;
+
+    // keys at even and values at odd indices, null until the first put
+    private Object[] table;
+    private int size;
+    // null while entries are in the packed array
+    private HashMap<K, V> map;
+
+    ////////// PUBLIC METHODS //////////
+
+    /**
+     * Constructs empty SmallMap. Nothing is allocated until the first put.
+     */
+    SmallMap() {
+        size = 0;
+    }
+
+    /**
+     * Return number of entries in the SmallMap.
+     *
+     * @return size
+     */
+    public int size() {
+        return map != null ? map.size() : size;
+    }
+
+    /**
+     * Check whether the SmallMap is empty.
+     *
+     * @return empty or not
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Get value with specified key.
+     *
+     * @param k key to be found
+     * @return element with given key or null if it doesn't exist
+     */
+    @SuppressWarnings("unchecked")
+    public V get(K k) {
+        if (map != null) {
+            return map.get(k);
+        }
+
+        int index = indexOf(k);
+        return index < 0 ? null : (V) table[index + 1];
+    }
+
+    /**
+     * Check whether there is an entry with specified key.
+     *
+     * @param k key to be found
+     * @return true if there is such key, false otherwise
+     */
+    @Override
+    public boolean containsKey(K k) {
+        return map != null ? map.containsKey(k) : indexOf(k) >= 0;
+    }
+
+    /**
+     * Put element with specified key and value and return old value.
+     * Moves entries to a HashMap if there are more than THRESHOLD of them.
+     *
+     * @param k key
+     * @param v value
+     * @return old value with specified key or null if it didn't exist
+     */
+    @SuppressWarnings("unchecked")
+    public V put(K k, V v) {
+        if (map != null) {
+            return map.put(k, v);
+        }
+
+        int index = indexOf(k);
+        if (index >= 0) {
+            V old = (V) table[index + 1];
+            table[index + 1] = v;
+            return old;
+        }
+
+        if (size == THRESHOLD) {
+            upgrade();
+            return map.put(k, v);
+        }
+
+        if (table == null) {
+            table = new Object[INITIAL_CAPACITY * 2];
+        }
+        else if (size * 2 == table.length) {
+            Object[] newTable = new Object[Math.min(table.length * 2, THRESHOLD * 2)];
+            System.arraycopy(table, 0, newTable, 0, table.length);
+            table = newTable;
+        }
+
+        table[size * 2] = k;
+        table[size * 2 + 1] = v;
+        size++;
+
+        return null;
+    }
+
+    /**
+     * Remove the element with specified key and return its value or null
+     * if it didn't exist.
+     * The last entry takes place of the removed one.
+     *
+     * @param k key
+     * @return the removed value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(K k) {
+        if (map != null) {
+            return map.remove(k);
+        }
+
+        int index = indexOf(k);
+        if (index < 0) {
+            return null;
+        }
+
+        V old = (V) table[index + 1];
+        int last = (size - 1) * 2;
+        table[index] = table[last];
+        table[index + 1] = table[last + 1];
+        table[last] = null;
+        table[last + 1] = null;
+        size--;
+
+        return old;
+    }
+
+    /// VIEWS OF SMALLMAP ///
+
+    /**
+     * Returns the set of entries of the SmallMap.
+     *
+     * @return set of entries
+     */
+    public Set<Entry<K, V>> entrySet() {
+        return new Set<Entry<K, V>>() {
+            public int size() {
+                return SmallMap.this.size();
+            }
+
+            public boolean isEmpty() {
+                return SmallMap.this.isEmpty();
+            }
+
+            @SuppressWarnings("unchecked")
+            public boolean contains(Object o) {
+                return containsKey((K) o);
+            }
+
+            public Iterator<Entry<K, V>> iterator() {
+                if (map != null) {
+                    return map.entrySet().iterator();
+                }
+
+                return new PackedIterator<Entry<K, V>>() {
+                    @SuppressWarnings("unchecked")
+                    Entry<K, V> at(int index) {
+                        return new Entry<>((K) table[index], (V) table[index + 1]);
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Returns the set of keys of the SmallMap.
+     *
+     * @return set of keys
+     */
+    public Set<K> keySet() {
+        return new Set<K>() {
+            public int size() {
+                return SmallMap.this.size();
+            }
+
+            public boolean isEmpty() {
+                return SmallMap.this.isEmpty();
+            }
+
+            @SuppressWarnings("unchecked")
+            public boolean contains(Object o) {
+                return containsKey((K) o);
+            }
+
+            public Iterator<K> iterator() {
+                if (map != null) {
+                    return map.keySet().iterator();
+                }
+
+                return new PackedIterator<K>() {
+                    @SuppressWarnings("unchecked")
+                    K at(int index) {
+                        return (K) table[index];
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Returns the collection of values in the SmallMap.
+     *
+     * @return collection of values
+     */
+    public Collection<V> values() {
+        return new Collection<V>() {
+            public int size() {
+                return SmallMap.this.size();
+            }
+
+            public boolean isEmpty() {
+                return SmallMap.this.isEmpty();
+            }
+
+            public Iterator<V> iterator() {
+                if (map != null) {
+                    return map.values().iterator();
+                }
+
+                return new PackedIterator<V>() {
+                    @SuppressWarnings("unchecked")
+                    V at(int index) {
+                        return (V) table[index + 1];
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Iterator over entries of the packed array.
+     *
+     * @param <T> type of elements produced from an entry
+     */
+    private abstract class PackedIterator<T> implements Iterator<T> {
+        private int currentEntry = 0;
+
+        /**
+         * Produces element from the entry.
+         *
+         * @param index index of the key of the entry in the packed array
+         * @return element of the entry
+         */
+        abstract T at(int index);
+
+        /**
+         * Checks whether there are next entries in the SmallMap.
+         *
+         * @return true if there is entry ahead, false otherwise
+         */
+        public boolean hasNext() {
+            return currentEntry < size;
+        }
+
+        /**
+         * Returns the element of the next entry.
+         *
+         * @return the next element if it exists
+         * @throws NoSuchElementException if the element doesn't exist
+         */
+        public T next() throws NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return at(2 * currentEntry++);
+        }
+    }
+
+    ////////// PRIVATE METHODS //////////
+
+    /**
+     * Finds the key in the packed array.
+     *
+     * @param key key to be found
+     * @return index of the key or -1 if there is no such key
+     */
+    private int indexOf(K key) {
+        int end = size * 2;
+
+        for (int i = 0; i < end; i += 2) {
+            Object current = table[i];
+            if (current == key || current.equals(key)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Moves all entries to a HashMap presized for twice as many.
+     */
+    @SuppressWarnings("unchecked")
+    private void upgrade() {
+        map = new HashMap<>(THRESHOLD * 2);
+
+        for (int i = 0; i < size * 2; i += 2) {
+            map.put((K) table[i], (V) table[i + 1]);
+        }
+
+        table = null;
+        size = 0;
+    }
+}
@@ -0,0 +1,534 @@
+import java.util.NoSuchElementException;
+
+/**
+ * Implementation of Map with Hashes in the manner of Swiss tables.
+ * Slots are split into groups of 8. For every slot one control byte
+ * is kept: either 7 bits of the hash of its key or a mark of an empty
+ * or deleted slot. Control bytes of a group are packed in one long,
+ * so a whole group is compared with the searched hash at once using
+ * bit tricks, and equals is called only for slots whose bits match.
+ * Groups are visited with Quadratic Probing.
+ *
+ * @param <K> type of keys
+ * @param <V> type of values
+ */
+class SwissHashMap<K, V> implements Map<K, V> {
+    ////////// PRIVATE FIELDS //////////
+    private static final int GROUP_SIZE = 8;
+    private static final long EMPTY = 0x80;
+    private static final long DELETED = 0xFE;
+    // control byte of a full slot is 0x00..0x7F
+    private static final long LSBS = 0x0101010101010101L;
+    private static final long MSBS = 0x8080808080808080L;
+
+    private int size;
+    private int deletedCount;
+    private int capacity;
+    private long[] control;
+    private Object[] keys;
+    private Object[] values;
+    private final double maxLoadFactor = 0.875;
+    private int maxProbingSequenceLength;
+
+    ////////// PUBLIC METHODS //////////
+
+    /**
+     * Constructs empty SwissHashMap.
+     */
+    SwissHashMap() {
+        size = 0;
+        deletedCount = 0;
+        allocate(16);
+        maxProbingSequenceLength = 0;
+    }
+
+    /**
+     * Return number of entries in the SwissHashMap.
+     *
+     * @return size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check whether the SwissHashMap is empty.
+     *
+     * @return empty or not
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get value with specified key.
+     *
+     * @param k key to be found
+     * @return element with given key or null if it doesn't exist
+     */
+    @SuppressWarnings("unchecked")
+    public V get(K k) {
+        int index = find(k, hash(k));
+        return index < 0 ? null : (V) values[index];
+    }
+
+    /**
+     * Check whether there is an entry with specified key.
+     * Unlike get, tells a key mapped to null from a missing one.
+     *
+     * @param k key to be found
+     * @return true if there is such key, false otherwise
+     */
+    @Override
+    public boolean containsKey(K k) {
+        return find(k, hash(k)) >= 0;
+    }
+
+    /**
+     * Put element with specified key and value and return old value.
+     *
+     * @param k key
+     * @param v value
+     * @return old value with specified key or null if it didn't exist
+     */
+    @SuppressWarnings("unchecked")
+    public V put(K k, V v) {
+        int hash = hash(k);
+        int index = find(k, hash);
+
+        if (index >= 0) {
+            V old = (V) values[index];
+            values[index] = v;
+            return old;
+        }
+
+        insert(k, v, hash);
+        size++;
+        resize();
+
+        return null;
+    }
+
+    /**
+     * Remove the element with specified key and return its value or null
+     * if it didn't exist.
+     * The slot becomes empty again if its group still has an empty slot,
+     * since no probing sequence could have passed such group.
+     *
+     * @param k key
+     * @return the removed value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(K k) {
+        int index = find(k, hash(k));
+
+        if (index < 0) {
+            return null;
+        }
+
+        V removed = (V) values[index];
+        keys[index] = null;
+        values[index] = null;
+
+        if (matchEmpty(control[index / GROUP_SIZE]) != 0) {
+            setControl(index, EMPTY);
+        }
+        else {
+            setControl(index, DELETED);
+            deletedCount++;
+        }
+        size--;
+
+        return removed;
+    }
+
+    /**
+     * Return maximal probing sequence in SwissHashMap,
+     * counted in groups rather than in slots.
+     * Current state of the map is considered, i.e.
+     * if maximal probing sequence was longer before
+     * rehash, it will be overridden by current one.
+     *
+     * @return length of maximal probing sequence
+     */
+    public int getMaxProbingSequenceLength() {
+        return maxProbingSequenceLength;
+    }
+
+    /// VIEWS OF SWISSHASHMAP ///
+
+    /**
+     * Returns the set of entries of the SwissHashMap.
+     *
+     * @return set of entries
+     */
+    public Set<Entry<K, V>> entrySet() {
+        return new EntrySet();
+    }
+
+    /**
+     * Returns the set of keys of the SwissHashMap.
+     *
+     * @return set of keys
+     */
+    public Set<K> keySet() {
+        return new KeySet();
+    }
+
+    /**
+     * Returns the collection of values in the SwissHashMap.
+     *
+     * @return collection of values
+     */
+    public Collection<V> values() {
+        return new ValueCollection();
+    }
+
+    /**
+     * Non-mutable set of entries of the SwissHashMap.
+     */
+    @SuppressWarnings("unchecked")
+    private class EntrySet implements Set<Entry<K, V>> {
+        /**
+         * Checks whether the set is empty.
+         *
+         * @return true if empty, false otherwise
+         */
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Returns the size of the set.
+         *
+         * @return size of the set
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns an iterator over elements of the set.
+         *
+         * @return iterator over elements
+         */
+        public Iterator<Entry<K, V>> iterator() {
+            return new SlotIterator<Entry<K, V>>() {
+                Entry<K, V> at(int index) {
+                    return new Entry<>((K) keys[index], (V) values[index]);
+                }
+            };
+        }
+
+        /**
+         * Checks whether the key of the entry is in the set.
+         *
+         * @param o object to be checked
+         * @return true if contains, false otherwise
+         */
+        public boolean contains(Object o) {
+            return find((K) o, hash((K) o)) >= 0;
+        }
+    }
+
+    /**
+     * Non-mutable set of keys of the SwissHashMap.
+     */
+    @SuppressWarnings("unchecked")
+    private class KeySet implements Set<K> {
+        /**
+         * Checks whether the set is empty.
+         *
+         * @return true if empty, false otherwise
+         */
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Returns the size of the set.
+         *
+         * @return size of the set
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns an iterator over elements of the set.
+         *
+         * @return iterator over elements
+         */
+        public Iterator<K> iterator() {
+            return new SlotIterator<K>() {
+                K at(int index) {
+                    return (K) keys[index];
+                }
+            };
+        }
+
+        /**
+         * Checks whether the key is in the set.
+         *
+         * @param o key to be checked
+         * @return true if contains, false otherwise
+         */
+        public boolean contains(Object o) {
+            return find((K) o, hash((K) o)) >= 0;
+        }
+    }
+
+    /**
+     * Non-mutable collection of values of the SwissHashMap.
+     */
+    @SuppressWarnings("unchecked")
+    private class ValueCollection implements Collection<V> {
+        /**
+         * Checks whether the collection is empty.
+         *
+         * @return true if empty, false otherwise
+         */
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Returns the size of the collection.
+         *
+         * @return size of the collection
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns an iterator over elements of the collection.
+         *
+         * @return iterator over elements
+         */
+        public Iterator<V> iterator() {
+            return new SlotIterator<V>() {
+                V at(int index) {
+                    return (V) values[index];
+                }
+            };
+        }
+    }
+
+    /**
+     * Iterator over the full slots of SwissHashMap.
+     *
+     * @param <T> type of elements produced from a slot
+     */
+    private abstract class SlotIterator<T> implements Iterator<T> {
+        private int currentIndex = 0;
+
+        /**
+         * Produces element from the full slot.
+         *
+         * @param index index of the slot
+         * @return element of the slot
+         */
+        abstract T at(int index);
+
+        /**
+         * Checks whether there are next slots in the SwissHashMap.
+         *
+         * @return true if there is full slot ahead, false otherwise
+         */
+        public boolean hasNext() {
+            while (currentIndex < capacity) {
+                if (keys[currentIndex] != null) {
+                    return true;
+                }
+                currentIndex++;
+            }
+
+            return false;
+        }
+
+        /**
+         * Returns the element of the next full slot.
+         *
+         * @return the next element if it exists
+         * @throws NoSuchElementException if the element doesn't exist
+         */
+        public T next() throws NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return at(currentIndex++);
+        }
+    }
+
+    ////////// PRIVATE METHODS //////////
+
+    /**
+     * Hashes the key. Finalizer is applied since both the highest
+     * bits (group) and the lowest bits (control byte) are used.
+     *
+     * @param key key to be hashed
+     * @return hash code
+     */
+    private int hash(K key) {
+        return Hasher.murmur3(Hasher.getHashCode(key));
+    }
+
+    /**
+     * Finds bytes of the group equal to the given control byte.
+     * May also report a full byte right above a matching one,
+     * so the keys still have to be compared.
+     *
+     * @param group packed control bytes
+     * @param h2 control byte of a full slot
+     * @return mask with highest bit set in every matching byte
+     */
+    private static long match(long group, long h2) {
+        long x = group ^ (LSBS * h2);
+        return (x - LSBS) & ~x & MSBS;
+    }
+
+    /**
+     * Finds empty bytes of the group.
+     * Only EMPTY has highest bit set and bit 1 clear.
+     *
+     * @param group packed control bytes
+     * @return mask with highest bit set in every empty byte
+     */
+    private static long matchEmpty(long group) {
+        return group & (~group << 6) & MSBS;
+    }
+
+    /**
+     * Finds empty or deleted bytes of the group.
+     * Only EMPTY and DELETED have highest bit set and bit 0 clear.
+     *
+     * @param group packed control bytes
+     * @return mask with highest bit set in every such byte
+     */
+    private static long matchEmptyOrDeleted(long group) {
+        return group & ~(group << 7) & MSBS;
+    }
+
+    /**
+     * Sets control byte of the slot.
+     *
+     * @param index index of the slot
+     * @param value new control byte
+     */
+    private void setControl(int index, long value) {
+        int shift = (index % GROUP_SIZE) * 8;
+        int word = index / GROUP_SIZE;
+        control[word] = (control[word] & ~(0xFFL << shift)) | (value << shift);
+    }
+
+    /**
+     * Finds slot with specified key.
+     *
+     * @param key key to be searched
+     * @param hash hash code of the key
+     * @return index of the slot with specified key or -1 if it doesn't exist
+     */
+    private int find(K key, int hash) {
+        int groupMask = control.length - 1;
+        int group = (hash >>> 7) & groupMask;
+        long h2 = hash & 0x7F;
+
+        for (int jump = 1; jump <= control.length; jump++) {
+            long word = control[group];
+
+            for (long m = match(word, h2); m != 0; m &= m - 1) {
+                int index = group * GROUP_SIZE + Long.numberOfTrailingZeros(m) / 8;
+                if (keys[index] != null && keys[index].equals(key)) {
+                    maxProbingSequenceLength = Math.max(maxProbingSequenceLength, jump - 1);
+                    return index;
+                }
+            }
+
+            if (matchEmpty(word) != 0) {
+                maxProbingSequenceLength = Math.max(maxProbingSequenceLength, jump - 1);
+                return -1;
+            }
+
+            group = (group + jump) & groupMask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Places new entry into the first empty or deleted slot
+     * on its probing sequence.
+     * Assumes the key is not in the table yet.
+     *
+     * @param key key of the entry
+     * @param value value of the entry
+     * @param hash hash code of the key
+     */
+    private void insert(Object key, Object value, int hash) {
+        int groupMask = control.length - 1;
+        int group = (hash >>> 7) & groupMask;
+
+        for (int jump = 1; ; jump++) {
+            long m = matchEmptyOrDeleted(control[group]);
+
+            if (m != 0) {
+                int index = group * GROUP_SIZE + Long.numberOfTrailingZeros(m) / 8;
+                if (((control[group] >>> ((index % GROUP_SIZE) * 8)) & 0xFF) == DELETED) {
+                    deletedCount--;
+                }
+
+                setControl(index, hash & 0x7F);
+                keys[index] = key;
+                values[index] = value;
+                maxProbingSequenceLength = Math.max(maxProbingSequenceLength, jump - 1);
+                return;
+            }
+
+            group = (group + jump) & groupMask;
+        }
+    }
+
+    /**
+     * Allocates empty table of given capacity.
+     *
+     * @param newCapacity capacity, power of two not less than GROUP_SIZE
+     */
+    private void allocate(int newCapacity) {
+        capacity = newCapacity;
+        control = new long[capacity / GROUP_SIZE];
+        keys = new Object[capacity];
+        values = new Object[capacity];
+
+        for (int i = 0; i < control.length; i++) {
+            control[i] = EMPTY * LSBS;
+        }
+    }
+
+    /**
+     * Increases size of the SwissHashMap if loadFactor is too high.
+     * Deleted slots are counted in the load as well; if most of the
+     * load is made of them, the table is rebuilt with the same capacity.
+     */
+    @SuppressWarnings("unchecked")
+    private void resize() {
+        double loadFactor = (size + deletedCount) * 1.0 / capacity;
+
+        if (loadFactor < maxLoadFactor) {
+            return;
+        }
+
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(size * 2.0 / capacity >= maxLoadFactor ? capacity * 2 : capacity);
+        deletedCount = 0;
+        maxProbingSequenceLength = 0;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                insert(oldKeys[i], oldValues[i], hash((K) oldKeys[i]));
+            }
+        }
+    }
+}